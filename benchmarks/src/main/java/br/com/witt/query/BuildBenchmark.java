@@ -0,0 +1,103 @@
+package br.com.witt.query;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.witt.query.model.Customer;
+import br.com.witt.query.model.Purchase;
+
+/**
+ * Measures the construction of queries, without a database: the where trees,
+ * the compilation into criteria, the projections of the select and the
+ * nesting of subqueries. It lives in the package of the queries to reach their
+ * protected methods.
+ *
+ * @author Luciano Witt
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	private int depth;
+
+	private Query query;
+	private Query nested;
+
+	@Setup
+	public void setup() {
+		query = newQuery();
+		nested = newNestedQuery(depth);
+	}
+
+	@Benchmark
+	public Query where() {
+		return newQuery();
+	}
+
+	@Benchmark
+	public DetachedCriteria getCriteria() {
+		return query.getCriteria();
+	}
+
+	@Benchmark
+	public Projection getProjection() {
+		return query.select().getProjection();
+	}
+
+	@Benchmark
+	public DetachedCriteria subqueries() {
+		return nested.getCriteria();
+	}
+
+	private static Query newQuery() {
+		Query query = new Query().from(Purchase.class, "p");
+		query.join("p.customer", "c");
+		query.select().group("c.city", "city").sum("p.amount", "total").rowCount("purchases");
+		query.where()
+				.eq("c.city", "Porto Alegre")
+				.and()
+				.blockBegin()
+					.gt("p.amount", 10.0)
+					.or()
+					.like("p.product", "book%")
+					.or()
+					.in("p.product", "pen", "pencil", "paper")
+				.blockEnd()
+				.and()
+				.not().eq("c.name", "nobody");
+		query.orderBy().asc("c.city");
+		return query;
+	}
+
+	private static Query newNestedQuery(int depth) {
+		Query query = new Query().from(Customer.class, "c0");
+		query.select().id();
+		query.where().eq("c0.city", "Porto Alegre");
+		for (int i = 1; i <= depth; i++) {
+			Query outer = new Query().from(Customer.class, "c" + i);
+			outer.select().id();
+			outer.where().ne("c" + i + ".name", "nobody").and().in("c" + i + ".id", query);
+			query = outer;
+		}
+		return query;
+	}
+}
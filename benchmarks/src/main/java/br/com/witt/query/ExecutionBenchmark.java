@@ -0,0 +1,135 @@
+package br.com.witt.query;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.witt.query.model.Customer;
+import br.com.witt.query.model.Purchase;
+import br.com.witt.query.pagination.PaginationParameters;
+import br.com.witt.query.pagination.PaginationResult;
+import br.com.witt.query.pagination.PaginationSearch;
+
+/**
+ * Measures the execution of queries, end to end, against an in-memory H2
+ * database. Each invocation runs on a new session, so the first level cache
+ * does not hide the hydration of the rows.
+ *
+ * @author Luciano Witt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBenchmark {
+
+	private static final int CUSTOMERS = 1000;
+	private static final int PURCHASES = 10;
+	private static final String[] CITIES = { "Porto Alegre", "Canoas", "Pelotas", "Caxias do Sul" };
+
+	private SessionFactory sessionFactory;
+	private Session session;
+	private Query customers;
+	private Query totals;
+	private PaginationParameters pagination;
+
+	@Setup(Level.Trial)
+	public void setupDatabase() {
+		sessionFactory = new Configuration()
+				.addAnnotatedClass(Customer.class)
+				.addAnnotatedClass(Purchase.class)
+				.setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1")
+				.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+				.setProperty("hibernate.hbm2ddl.auto", "create")
+				.setProperty("hibernate.jdbc.batch_size", "100")
+				.buildSessionFactory();
+
+		Session session = sessionFactory.openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			long purchaseId = 0;
+			for (long id = 1; id <= CUSTOMERS; id++) {
+				Customer customer = new Customer(id, "customer " + id, CITIES[(int) (id % CITIES.length)]);
+				session.persist(customer);
+				for (int i = 0; i < PURCHASES; i++) {
+					session.persist(new Purchase(++purchaseId, customer, "product " + (i % 5), (double) i));
+				}
+				if (id % 100 == 0) {
+					session.flush();
+					session.clear();
+				}
+			}
+			transaction.commit();
+		} finally {
+			session.close();
+		}
+
+		customers = new Query().from(Customer.class, "c");
+		customers.join("c.purchases", "p");
+		customers.where().eq("c.city", "Porto Alegre").and().ge("p.amount", 5.0);
+		customers.orderBy().asc("c.name");
+
+		totals = new Query().from(Purchase.class, "p");
+		totals.join("p.customer", "c");
+		totals.select().group("c.city", "city").sum("p.amount", "total");
+		totals.where().ge("p.amount", 1.0);
+
+		pagination = new PaginationParameters(2, 20) {
+		};
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownDatabase() {
+		sessionFactory.close();
+	}
+
+	@Setup(Level.Invocation)
+	public void openSession() {
+		session = sessionFactory.openSession();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeSession() {
+		session.close();
+	}
+
+	@Benchmark
+	public List<Object> list() {
+		return customers.list(session);
+	}
+
+	@Benchmark
+	public List<Object> aggregate() {
+		return totals.list(session);
+	}
+
+	@Benchmark
+	public List<Object> getPage() {
+		return customers.getPage(2, 20, session);
+	}
+
+	@Benchmark
+	public PaginationResult paginationSearch() throws Exception {
+		return PaginationSearch.execute(customers, pagination, session);
+	}
+}
@@ -0,0 +1,44 @@
+package br.com.witt.query.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.OneToMany;
+
+@Entity
+public class Customer {
+
+	@Id
+	private Long id;
+	private String name;
+	private String city;
+	@OneToMany(mappedBy = "customer")
+	private List<Purchase> purchases = new ArrayList<Purchase>();
+
+	public Customer() {
+	}
+
+	public Customer(Long id, String name, String city) {
+		this.id = id;
+		this.name = name;
+		this.city = city;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public List<Purchase> getPurchases() {
+		return purchases;
+	}
+}
@@ -0,0 +1,43 @@
+package br.com.witt.query.model;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+@Entity
+public class Purchase {
+
+	@Id
+	private Long id;
+	@ManyToOne(fetch = FetchType.LAZY)
+	private Customer customer;
+	private String product;
+	private Double amount;
+
+	public Purchase() {
+	}
+
+	public Purchase(Long id, Customer customer, String product, Double amount) {
+		this.id = id;
+		this.customer = customer;
+		this.product = product;
+		this.amount = amount;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Customer getCustomer() {
+		return customer;
+	}
+
+	public String getProduct() {
+		return product;
+	}
+
+	public Double getAmount() {
+		return amount;
+	}
+}
@@ -1,5 +1,11 @@
 package br.com.witt.query;
 
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
@@ -10,6 +16,67 @@ public class And extends BooleanOperator {
 		super(firstCondition);
 	}
 
+	@Override
+	protected void describe(CanonicalForm form) {
+		describe(form, " and ");
+	}
+
+	/**
+	 * Flattens the nested conjunctions, removes the duplicated conditions, and
+	 * detects the contradictions: a false condition, or, when not negated, a
+	 * property equal to two different integral numbers or enum constants. Other
+	 * values are not compared, as values that differ in Java can be equal in the
+	 * database, as decimals of different scales or strings on case insensitive
+	 * collations.
+	 */
+	@Override
+	protected Condition optimize(boolean negated) {
+		List<Condition> conditions = optimizeConditions(negated);
+		Map<String, Object> equalities = new HashMap<String, Object>();
+		Iterator<Condition> iterator = conditions.iterator();
+		while (iterator.hasNext()) {
+			Condition condition = iterator.next();
+			if (condition == ConstantCondition.FALSE) {
+				return ConstantCondition.FALSE;
+			} else if (condition == ConstantCondition.TRUE) {
+				iterator.remove();
+			} else if (!negated && condition instanceof SimpleCondition
+					&& "=".equals(((SimpleCondition) condition).getOperator())) {
+				SimpleCondition comparison = (SimpleCondition) condition;
+				String property = comparison.getComparedProperty();
+				if (property != null) {
+					Object value = comparison.getValues()[0];
+					if (isExactlyComparable(value)) {
+						Object other = equalities.put(property, value);
+						if (other != null && other.getClass() == value.getClass() && !other.equals(value)) {
+							return ConstantCondition.FALSE;
+						}
+					}
+				}
+			}
+		}
+
+		if (conditions.isEmpty()) {
+			return ConstantCondition.TRUE;
+		} else if (conditions.size() == 1) {
+			return conditions.get(0);
+		}
+		And and = new And(conditions.get(0));
+		for (int i = 1; i < conditions.size(); i++) {
+			and.addCondition(conditions.get(i));
+		}
+		return and;
+	}
+
+	/**
+	 * Tells if the given value is equal, in the database, only to the values
+	 * equal to it in Java.
+	 */
+	private static boolean isExactlyComparable(Object value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| value instanceof BigInteger || value instanceof Enum;
+	}
+
 	@Override
 	protected Criterion getCriterion() {
 		Conjunction and = Restrictions.conjunction();
@@ -0,0 +1,171 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * Coalesces single key lookups into batches, each one executed as a single
+ * query with an IN list of the keys, so a loop of lookups makes a few round
+ * trips to the database instead of one per key.
+ * <p>
+ * The template must filter the key property by the IN list bound to the key
+ * parameter. A batch is executed when it reaches the maximum batch size, or
+ * when the maximum delay has passed since its first lookup, on its own session
+ * opened from the session factory and on a thread of the scheduler. The rows
+ * are then handed to the futures of their keys; the future of a key without a
+ * row completes with null.
+ *
+ * <pre>
+ * Query query = new Query().from(Customer.class, "c");
+ * query.where().in("c.id", param("ids"));
+ * BatchLoader&lt;Long, Customer&gt; loader = new BatchLoader&lt;Long, Customer&gt;(query.compile(), "ids",
+ * 		Customer::getId, sessionFactory, scheduler, 100, 10);
+ * CompletableFuture&lt;Customer&gt; customer = loader.load(id);
+ * </pre>
+ *
+ * @author Luciano Witt
+ *
+ */
+public class BatchLoader<K, T> {
+
+	private final QueryTemplate template;
+	private final String keyParameter;
+	private final Function<T, K> keyOf;
+	private final SessionFactory sessionFactory;
+	private final ScheduledExecutorService scheduler;
+	private final int maxBatchSize;
+	private final long maxDelay;
+	private final Map<String, Object> parameters;
+	private Map<K, CompletableFuture<T>> pending;
+	private ScheduledFuture<?> timer;
+
+	/**
+	 * Creates a batch loader.
+	 *
+	 * @param template the lookup query
+	 * @param keyParameter the name of the parameter bound to the IN list of keys
+	 * @param keyOf the function that reads the key of a row
+	 * @param sessionFactory the Hibernate session factory
+	 * @param scheduler the executor of the batches
+	 * @param maxBatchSize the maximum number of keys of a batch
+	 * @param maxDelay the time, in milliseconds, a lookup may wait for its batch
+	 */
+	public BatchLoader(QueryTemplate template, String keyParameter, Function<T, K> keyOf,
+			SessionFactory sessionFactory, ScheduledExecutorService scheduler, int maxBatchSize, long maxDelay) {
+		this(template, keyParameter, keyOf, sessionFactory, scheduler, maxBatchSize, maxDelay,
+				Collections.<String, Object>emptyMap());
+	}
+
+	/**
+	 * Creates a batch loader, binding the given values to the other parameters of
+	 * the lookup query.
+	 *
+	 * @param template the lookup query
+	 * @param keyParameter the name of the parameter bound to the IN list of keys
+	 * @param keyOf the function that reads the key of a row
+	 * @param sessionFactory the Hibernate session factory
+	 * @param scheduler the executor of the batches
+	 * @param maxBatchSize the maximum number of keys of a batch
+	 * @param maxDelay the time, in milliseconds, a lookup may wait for its batch
+	 * @param parameters the values of the other parameters, by name
+	 */
+	public BatchLoader(QueryTemplate template, String keyParameter, Function<T, K> keyOf,
+			SessionFactory sessionFactory, ScheduledExecutorService scheduler, int maxBatchSize, long maxDelay,
+			Map<String, Object> parameters) {
+		if (maxBatchSize <= 0) {
+			throw new RuntimeException("Batch size must be positive");
+		}
+		this.template = template;
+		this.keyParameter = keyParameter;
+		this.keyOf = keyOf;
+		this.sessionFactory = sessionFactory;
+		this.scheduler = scheduler;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = maxDelay;
+		this.parameters = new HashMap<String, Object>(parameters);
+		this.pending = new LinkedHashMap<K, CompletableFuture<T>>();
+		this.timer = null;
+	}
+
+	/**
+	 * Looks up the row with the given key on the next batch. Lookups of a key
+	 * already waiting for the batch share the same future.
+	 *
+	 * @param key
+	 * @return the future row, or null if there is no row with the key
+	 */
+	public synchronized CompletableFuture<T> load(K key) {
+		CompletableFuture<T> future = pending.get(key);
+		if (future != null) {
+			return future;
+		}
+		future = new CompletableFuture<T>();
+		pending.put(key, future);
+		if (pending.size() >= maxBatchSize) {
+			dispatch();
+		} else if (timer == null) {
+			timer = scheduler.schedule(() -> flush(), maxDelay, TimeUnit.MILLISECONDS);
+		}
+		return future;
+	}
+
+	/**
+	 * Executes the current batch without waiting for it to fill up.
+	 */
+	public synchronized void flush() {
+		if (!pending.isEmpty()) {
+			dispatch();
+		}
+	}
+
+	private void dispatch() {
+		final Map<K, CompletableFuture<T>> batch = pending;
+		pending = new LinkedHashMap<K, CompletableFuture<T>>();
+		if (timer != null) {
+			timer.cancel(false);
+			timer = null;
+		}
+		scheduler.execute(() -> execute(batch));
+	}
+
+	private void execute(Map<K, CompletableFuture<T>> batch) {
+		Map<K, T> rows = new HashMap<K, T>();
+		Session session = sessionFactory.openSession();
+		try {
+			Map<String, Object> batchParameters = new HashMap<String, Object>(parameters);
+			batchParameters.put(keyParameter, new ArrayList<K>(batch.keySet()));
+			List<T> result = template.list(session, batchParameters);
+			for (T row : result) {
+				K key = keyOf.apply(row);
+				CompletableFuture<T> future = batch.get(key);
+				if (rows.containsKey(key) && rows.get(key) != row && future != null) {
+					batch.remove(key);
+					future.completeExceptionally(new RuntimeException("Query did not return a unique result for key " + key));
+				}
+				rows.put(key, row);
+			}
+		} catch (RuntimeException e) {
+			for (CompletableFuture<T> future : batch.values()) {
+				future.completeExceptionally(e);
+			}
+			return;
+		} finally {
+			session.close();
+		}
+		for (Map.Entry<K, CompletableFuture<T>> entry : batch.entrySet()) {
+			entry.getValue().complete(rows.get(entry.getKey()));
+		}
+	}
+}
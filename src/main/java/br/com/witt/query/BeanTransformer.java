@@ -0,0 +1,171 @@
+package br.com.witt.query;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.transform.AliasedTupleSubsetResultTransformer;
+
+/**
+ * Result transformer that creates an instance of a bean class for each row,
+ * setting the bean properties with the same names as the aliases of the
+ * selected projections. It replaces
+ * {@link org.hibernate.transform.Transformers#aliasToBean(Class)}: the setters,
+ * or the fields of the properties without setters, are resolved only once for
+ * each bean class and list of aliases, as method handles, and reused by every
+ * row of every query. They are kept on the bean classes themselves, so they do
+ * not keep the classes loaded.
+ *
+ * @see Select#bean(Class)
+ *
+ * @author Luciano Witt
+ *
+ */
+class BeanTransformer extends AliasedTupleSubsetResultTransformer {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private static final ClassValue<ConcurrentMap<List<String>, Plan>> PLANS = new ClassValue<ConcurrentMap<List<String>, Plan>>() {
+
+		@Override
+		protected ConcurrentMap<List<String>, Plan> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<List<String>, Plan>();
+		}
+	};
+
+	private final Class<?> beanClass;
+	private transient volatile Plan plan;
+
+	BeanTransformer(Class<?> beanClass) {
+		this.beanClass = beanClass;
+	}
+
+	@Override
+	public Object transformTuple(Object[] tuple, String[] aliases) {
+		Plan plan = this.plan;
+		if (plan == null || !plan.matches(aliases)) {
+			plan = getPlan(beanClass, aliases);
+			this.plan = plan;
+		}
+		return plan.create(tuple);
+	}
+
+	@Override
+	public boolean isTransformedValueATupleElement(String[] aliases, int tupleLength) {
+		return false;
+	}
+
+	private static Plan getPlan(Class<?> beanClass, String[] aliases) {
+		ConcurrentMap<List<String>, Plan> plans = PLANS.get(beanClass);
+		List<String> key = Arrays.asList(aliases.clone());
+		Plan plan = plans.get(key);
+		if (plan == null) {
+			plan = new Plan(beanClass, aliases.clone());
+			Plan existing = plans.putIfAbsent(key, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof BeanTransformer && ((BeanTransformer) obj).beanClass.equals(beanClass);
+	}
+
+	@Override
+	public int hashCode() {
+		return beanClass.hashCode();
+	}
+
+	/**
+	 * The method handles that create a bean and set each one of its properties,
+	 * by the position of the alias.
+	 */
+	private static class Plan {
+
+		private Class<?> beanClass;
+		private String[] aliases;
+		private MethodHandle constructor;
+		private MethodHandle[] setters;
+		private boolean[] primitive;
+
+		private Plan(Class<?> beanClass, String[] aliases) {
+			this.beanClass = beanClass;
+			this.aliases = aliases;
+			this.setters = new MethodHandle[aliases.length];
+			this.primitive = new boolean[aliases.length];
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			try {
+				Constructor<?> defaultConstructor = beanClass.getDeclaredConstructor();
+				defaultConstructor.setAccessible(true);
+				constructor = lookup.unreflectConstructor(defaultConstructor).asType(CONSTRUCTOR_TYPE);
+				for (int i = 0; i < aliases.length; i++) {
+					if (aliases[i] != null) {
+						setters[i] = findSetter(lookup, beanClass, aliases[i], i);
+					}
+				}
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new RuntimeException("Could not map the aliases " + Arrays.toString(aliases) + " to "
+						+ beanClass.getName(), e);
+			}
+		}
+
+		private MethodHandle findSetter(MethodHandles.Lookup lookup, Class<?> beanClass, String alias, int index)
+				throws IllegalAccessException {
+			String name = "set" + Character.toUpperCase(alias.charAt(0)) + alias.substring(1);
+			for (Class<?> type = beanClass; type != null; type = type.getSuperclass()) {
+				for (Method method : type.getDeclaredMethods()) {
+					if (method.getName().equals(name) && method.getParameterTypes().length == 1
+							&& !Modifier.isStatic(method.getModifiers())) {
+						method.setAccessible(true);
+						primitive[index] = method.getParameterTypes()[0].isPrimitive();
+						return lookup.unreflect(method).asType(SETTER_TYPE);
+					}
+				}
+			}
+			for (Class<?> type = beanClass; type != null; type = type.getSuperclass()) {
+				for (Field field : type.getDeclaredFields()) {
+					if (field.getName().equals(alias) && !Modifier.isStatic(field.getModifiers())) {
+						field.setAccessible(true);
+						primitive[index] = field.getType().isPrimitive();
+						return lookup.unreflectSetter(field).asType(SETTER_TYPE);
+					}
+				}
+			}
+			throw new RuntimeException("Could not find a setter for " + alias + " on " + beanClass.getName());
+		}
+
+		private boolean matches(String[] aliases) {
+			return this.aliases == aliases || Arrays.equals(this.aliases, aliases);
+		}
+
+		private Object create(Object[] tuple) {
+			try {
+				Object bean = constructor.invokeExact();
+				for (int i = 0; i < setters.length; i++) {
+					if (setters[i] != null && (tuple[i] != null || !primitive[i])) {
+						setters[i].invokeExact(bean, tuple[i]);
+					}
+				}
+				return bean;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException("Could not create " + beanClass.getName(), e);
+			}
+		}
+	}
+}
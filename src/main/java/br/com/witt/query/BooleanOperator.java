@@ -1,7 +1,11 @@
 package br.com.witt.query;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public abstract class BooleanOperator extends Condition {
 
@@ -20,6 +24,52 @@ public abstract class BooleanOperator extends Condition {
 		return conditions;
 	}
 
+	@Override
+	protected boolean references(String alias) {
+		for (Condition condition : conditions) {
+			if (condition.references(alias)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected void describe(CanonicalForm form, String operator) {
+		form.append("(");
+		for (int i = 0; i < conditions.size(); i++) {
+			if (i > 0) {
+				form.append(operator);
+			}
+			conditions.get(i).describe(form);
+		}
+		form.append(")");
+	}
+
+	/**
+	 * Optimizes the conditions, flattening the nested operators of the same type
+	 * as this one and removing the duplicated conditions.
+	 * 
+	 * @param negated if this operator is under a NOT
+	 * @return the optimized conditions
+	 */
+	protected List<Condition> optimizeConditions(boolean negated) {
+		List<Condition> result = new ArrayList<Condition>();
+		Set<Object> keys = new HashSet<Object>();
+		for (Condition condition : conditions) {
+			Condition optimized = condition.optimize(negated);
+			List<Condition> children = (optimized.getClass() == getClass() ? ((BooleanOperator) optimized).conditions
+					: Collections.singletonList(optimized));
+			for (Condition child : children) {
+				CanonicalForm form = new CanonicalForm();
+				child.describe(form);
+				if (keys.add(Arrays.asList(form.getShape(), form.getValues()))) {
+					result.add(child);
+				}
+			}
+		}
+		return result;
+	}
+
 	protected Condition getLast() {
 		return conditions.get(conditions.size() - 1);
 	}
@@ -0,0 +1,87 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Canonical description of a query tree, built by its nodes. The shape holds
+ * the entity classes, properties, operators, joins and projections, with a
+ * placeholder in the place of each literal value, and the values are kept
+ * apart, in order, so they are compared by their own equality. A list of
+ * values, as the one of an IN, takes a single placeholder, whatever its
+ * length, so lists of different lengths give the same shape. Each subquery is
+ * kept with the subqueries it is nested in, whose aliases it may reference.
+ *
+ * @author Luciano Witt
+ *
+ */
+class CanonicalForm {
+
+	private StringBuilder shape;
+	private List<Object> values;
+	private List<Query> subqueries;
+	private List<List<Query>> enclosingQueries;
+	private List<Query> nesting;
+
+	CanonicalForm() {
+		shape = new StringBuilder();
+		values = new ArrayList<Object>();
+		subqueries = new ArrayList<Query>();
+		enclosingQueries = new ArrayList<List<Query>>();
+		nesting = new ArrayList<Query>();
+	}
+
+	CanonicalForm append(String text) {
+		shape.append(text);
+		return this;
+	}
+
+	CanonicalForm value(Object value) {
+		if (value instanceof Parameter) {
+			shape.append(value.toString());
+		} else {
+			shape.append('?');
+			values.add(value);
+		}
+		return this;
+	}
+
+	CanonicalForm values(Object[] values) {
+		shape.append("(?...)");
+		for (Object value : values) {
+			this.values.add(value);
+		}
+		return this;
+	}
+
+	CanonicalForm subquery(Query subquery) {
+		subqueries.add(subquery);
+		enclosingQueries.add(new ArrayList<Query>(nesting));
+		nesting.add(subquery);
+		shape.append('(');
+		subquery.describe(this);
+		shape.append(')');
+		nesting.remove(nesting.size() - 1);
+		return this;
+	}
+
+	String getShape() {
+		return shape.toString();
+	}
+
+	List<Object> getValues() {
+		return values;
+	}
+
+	List<Query> getSubqueries() {
+		return subqueries;
+	}
+
+	/**
+	 * Returns the subqueries the subquery at the given index is nested in, from
+	 * the outermost one, not including the described query.
+	 */
+	List<Query> getEnclosingQueries(int index) {
+		return enclosingQueries.get(index);
+	}
+}
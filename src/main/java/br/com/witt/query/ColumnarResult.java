@@ -0,0 +1,424 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a projection query stored by columns, in primitive arrays, instead
+ * of one array of boxed values for each row. Integral numbers are kept in
+ * {@code long[]}, floating point numbers in {@code double[]}, and strings are
+ * dictionary encoded, as {@code int[]} codes of the distinct strings, which
+ * suits the group keys of aggregations. Other values, including
+ * {@link java.math.BigDecimal} and {@link java.math.BigInteger} numbers, which
+ * would lose precision as doubles, are kept as objects.
+ *
+ * @see Query#columnar(org.hibernate.Session)
+ *
+ * @author Luciano Witt
+ *
+ */
+public class ColumnarResult {
+
+	private int rowCount;
+	private List<String> columnNames;
+	private List<Column> columns;
+
+	protected ColumnarResult(int rowCount, List<String> columnNames, List<Column> columns) {
+		this.rowCount = rowCount;
+		this.columnNames = Collections.unmodifiableList(columnNames);
+		this.columns = Collections.unmodifiableList(columns);
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Returns the aliases of the columns, null for the projections selected
+	 * without an alias.
+	 *
+	 * @return the column names
+	 */
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	public Column getColumn(int index) {
+		return columns.get(index);
+	}
+
+	/**
+	 * Returns the column of the projection selected with the given alias.
+	 *
+	 * @param alias
+	 * @return {@link Column}
+	 */
+	public Column getColumn(String alias) {
+		int index = columnNames.indexOf(alias);
+		if (index < 0) {
+			throw new RuntimeException("Column " + alias + " not found");
+		}
+		return columns.get(index);
+	}
+
+	/**
+	 * A column of the result. The row values can always be read boxed, with
+	 * {@link #getValue(int)}, but each subclass gives access to its primitive
+	 * array.
+	 */
+	public abstract static class Column {
+
+		private BitSet nulls;
+		private int size;
+
+		protected Column(BitSet nulls, int size) {
+			this.nulls = nulls;
+			this.size = size;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		/**
+		 * Returns the value of the given row, boxed, or null.
+		 *
+		 * @param row
+		 * @return the value
+		 */
+		public abstract Object getValue(int row);
+	}
+
+	/**
+	 * Column of integral numbers. Null values are stored as zero.
+	 */
+	public static class LongColumn extends Column {
+
+		private long[] values;
+
+		protected LongColumn(long[] values, BitSet nulls, int size) {
+			super(nulls, size);
+			this.values = values;
+		}
+
+		public long getLong(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Returns the array of values, that must not be changed.
+		 *
+		 * @return the values
+		 */
+		public long[] getValues() {
+			return values;
+		}
+
+		@Override
+		public Object getValue(int row) {
+			return (isNull(row) ? null : Long.valueOf(values[row]));
+		}
+	}
+
+	/**
+	 * Column of decimal numbers. Null values are stored as zero.
+	 */
+	public static class DoubleColumn extends Column {
+
+		private double[] values;
+
+		protected DoubleColumn(double[] values, BitSet nulls, int size) {
+			super(nulls, size);
+			this.values = values;
+		}
+
+		public double getDouble(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Returns the array of values, that must not be changed.
+		 *
+		 * @return the values
+		 */
+		public double[] getValues() {
+			return values;
+		}
+
+		@Override
+		public Object getValue(int row) {
+			return (isNull(row) ? null : Double.valueOf(values[row]));
+		}
+	}
+
+	/**
+	 * Dictionary encoded column of strings: each row holds the code of its
+	 * string, the index of the string in the dictionary. Null values have the
+	 * code -1.
+	 */
+	public static class StringColumn extends Column {
+
+		private int[] codes;
+		private List<String> dictionary;
+
+		protected StringColumn(int[] codes, List<String> dictionary, BitSet nulls, int size) {
+			super(nulls, size);
+			this.codes = codes;
+			this.dictionary = Collections.unmodifiableList(dictionary);
+		}
+
+		public int getCode(int row) {
+			return codes[row];
+		}
+
+		/**
+		 * Returns the array of codes, that must not be changed.
+		 *
+		 * @return the codes
+		 */
+		public int[] getCodes() {
+			return codes;
+		}
+
+		/**
+		 * Returns the distinct strings of the column, in the order they were read.
+		 *
+		 * @return the dictionary
+		 */
+		public List<String> getDictionary() {
+			return dictionary;
+		}
+
+		public String getString(int row) {
+			return (codes[row] < 0 ? null : dictionary.get(codes[row]));
+		}
+
+		@Override
+		public Object getValue(int row) {
+			return getString(row);
+		}
+	}
+
+	/**
+	 * Column of values that are neither numbers nor strings.
+	 */
+	public static class ObjectColumn extends Column {
+
+		private Object[] values;
+
+		protected ObjectColumn(Object[] values, BitSet nulls, int size) {
+			super(nulls, size);
+			this.values = values;
+		}
+
+		@Override
+		public Object getValue(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Returns the values as a list.
+		 *
+		 * @return the values
+		 */
+		public List<Object> getValues() {
+			return Collections.unmodifiableList(Arrays.asList(values));
+		}
+	}
+
+	/**
+	 * Accumulates the values of a column, row by row, in the most compact array
+	 * that holds them, growing it from the JDBC fetch size. A long column turns
+	 * into a double column when a floating point number is read, and any other
+	 * column turns into an object column when a value of another kind is read.
+	 */
+	static class Builder {
+
+		private static final int UNKNOWN = 0;
+		private static final int LONG = 1;
+		private static final int DOUBLE = 2;
+		private static final int STRING = 3;
+		private static final int OBJECT = 4;
+
+		private int kind;
+		private int size;
+		private int capacity;
+		private BitSet nulls;
+		private long[] longs;
+		private double[] doubles;
+		private int[] codes;
+		private List<String> dictionary;
+		private Map<String, Integer> dictionaryCodes;
+		private Object[] objects;
+
+		Builder(int capacity) {
+			this.kind = UNKNOWN;
+			this.size = 0;
+			this.capacity = Math.max(capacity, 16);
+			this.nulls = new BitSet();
+		}
+
+		void add(Object value) {
+			if (value == null) {
+				nulls.set(size);
+				ensureCapacity();
+				if (kind == STRING) {
+					codes[size] = -1;
+				}
+				size++;
+				return;
+			}
+
+			int valueKind = kindOf(value);
+			if (kind == UNKNOWN) {
+				start(valueKind);
+			} else if (kind != valueKind && kind != OBJECT) {
+				if (kind == LONG && valueKind == DOUBLE) {
+					toDoubles();
+				} else if (!(kind == DOUBLE && valueKind == LONG)) {
+					toObjects();
+				}
+			}
+			ensureCapacity();
+
+			switch (kind) {
+			case LONG:
+				longs[size] = ((Number) value).longValue();
+				break;
+			case DOUBLE:
+				doubles[size] = ((Number) value).doubleValue();
+				break;
+			case STRING:
+				codes[size] = encode((String) value);
+				break;
+			default:
+				objects[size] = value;
+			}
+			size++;
+		}
+
+		private static int kindOf(Object value) {
+			if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				return LONG;
+			} else if (value instanceof Double || value instanceof Float) {
+				return DOUBLE;
+			} else if (value instanceof String) {
+				return STRING;
+			}
+			return OBJECT;
+		}
+
+		private void start(int kind) {
+			this.kind = kind;
+			switch (kind) {
+			case LONG:
+				longs = new long[capacity];
+				break;
+			case DOUBLE:
+				doubles = new double[capacity];
+				break;
+			case STRING:
+				codes = new int[capacity];
+				Arrays.fill(codes, 0, size, -1);
+				dictionary = new ArrayList<String>();
+				dictionaryCodes = new HashMap<String, Integer>();
+				break;
+			default:
+				objects = new Object[capacity];
+			}
+		}
+
+		private int encode(String value) {
+			Integer code = dictionaryCodes.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(value);
+				dictionaryCodes.put(value, code);
+			}
+			return code;
+		}
+
+		private void toDoubles() {
+			doubles = new double[capacity];
+			for (int i = 0; i < size; i++) {
+				doubles[i] = longs[i];
+			}
+			longs = null;
+			kind = DOUBLE;
+		}
+
+		private void toObjects() {
+			Object[] values = new Object[capacity];
+			for (int i = 0; i < size; i++) {
+				values[i] = (nulls.get(i) ? null : value(i));
+			}
+			objects = values;
+			longs = null;
+			doubles = null;
+			codes = null;
+			dictionary = null;
+			dictionaryCodes = null;
+			kind = OBJECT;
+		}
+
+		private Object value(int row) {
+			switch (kind) {
+			case LONG:
+				return longs[row];
+			case DOUBLE:
+				return doubles[row];
+			case STRING:
+				return dictionary.get(codes[row]);
+			default:
+				return objects[row];
+			}
+		}
+
+		private void ensureCapacity() {
+			if (size < capacity) {
+				return;
+			}
+			capacity *= 2;
+			if (longs != null) {
+				longs = Arrays.copyOf(longs, capacity);
+			}
+			if (doubles != null) {
+				doubles = Arrays.copyOf(doubles, capacity);
+			}
+			if (codes != null) {
+				codes = Arrays.copyOf(codes, capacity);
+			}
+			if (objects != null) {
+				objects = Arrays.copyOf(objects, capacity);
+			}
+		}
+
+		Column build() {
+			switch (kind) {
+			case LONG:
+				return new LongColumn(Arrays.copyOf(longs, size), nulls, size);
+			case DOUBLE:
+				return new DoubleColumn(Arrays.copyOf(doubles, size), nulls, size);
+			case STRING:
+				return new StringColumn(Arrays.copyOf(codes, size), dictionary, nulls, size);
+			case OBJECT:
+				return new ObjectColumn(Arrays.copyOf(objects, size), nulls, size);
+			default:
+				return new ObjectColumn(new Object[size], nulls, size);
+			}
+		}
+	}
+}
@@ -5,4 +5,47 @@ import org.hibernate.criterion.Criterion;
 public abstract class Condition {
 
 	protected abstract Criterion getCriterion();
+
+	/**
+	 * Tells if this condition may reference the given alias. When it is not
+	 * possible to know, as in SQL chunks, it must return true, as it does by
+	 * default.
+	 * 
+	 * @param alias
+	 * @return true if the alias may be referenced
+	 */
+	protected boolean references(String alias) {
+		return true;
+	}
+
+	/**
+	 * Appends the canonical description of this condition to the given form. By
+	 * default, the string representation of the condition is appended, so its
+	 * values are part of the shape.
+	 * 
+	 * @param form
+	 */
+	protected void describe(CanonicalForm form) {
+		form.append(toString());
+	}
+
+	/**
+	 * Returns an equivalent condition, simplified before the criterion is
+	 * generated. This condition is left unchanged.
+	 * <p>
+	 * Under a NOT, a condition that is never true can not be taken as false,
+	 * because SQL comparisons with nulls are unknown, and the negation of unknown
+	 * is still unknown.
+	 * 
+	 * @param negated if the condition is under a NOT
+	 * @return the simplified condition, {@link ConstantCondition#TRUE} or
+	 *         {@link ConstantCondition#FALSE} when its value is known
+	 */
+	protected Condition optimize(boolean negated) {
+		return this;
+	}
+
+	protected static boolean references(String property, String alias) {
+		return property.equals(alias) || property.startsWith(alias + ".");
+	}
 }
@@ -0,0 +1,38 @@
+package br.com.witt.query;
+
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
+
+/**
+ * Condition that is always true or always false, produced by the
+ * {@link Condition#optimize(boolean) optimization} of the where conditions.
+ *
+ * @author Luciano Witt
+ *
+ */
+class ConstantCondition extends Condition {
+
+	static final ConstantCondition TRUE = new ConstantCondition(true);
+	static final ConstantCondition FALSE = new ConstantCondition(false);
+
+	private boolean value;
+
+	private ConstantCondition(boolean value) {
+		this.value = value;
+	}
+
+	@Override
+	protected Criterion getCriterion() {
+		return Restrictions.sqlRestriction(value ? "1=1" : "1=0");
+	}
+
+	@Override
+	protected boolean references(String alias) {
+		return false;
+	}
+
+	@Override
+	protected void describe(CanonicalForm form) {
+		form.append(String.valueOf(value));
+	}
+}
@@ -0,0 +1,112 @@
+package br.com.witt.query;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.transform.AliasedTupleSubsetResultTransformer;
+
+/**
+ * Result transformer that creates an instance of a class for each row, passing
+ * the selected projections, in order, to its constructor with the same number
+ * of parameters. The constructor is resolved only once for each class and
+ * number of parameters, as a method handle, and reused by every transformer.
+ *
+ * @see Select#constructor(Class)
+ *
+ * @author Luciano Witt
+ *
+ */
+class ConstructorTransformer extends AliasedTupleSubsetResultTransformer {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The constructors of each class, by number of parameters. They are kept on
+	 * the classes themselves, so they do not keep the classes loaded.
+	 */
+	private static final ClassValue<ConcurrentMap<Integer, MethodHandle>> CONSTRUCTORS = new ClassValue<ConcurrentMap<Integer, MethodHandle>>() {
+
+		@Override
+		protected ConcurrentMap<Integer, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Integer, MethodHandle>();
+		}
+	};
+
+	private final Class<?> resultClass;
+	private final int arity;
+	private transient MethodHandle constructor;
+
+	ConstructorTransformer(Class<?> resultClass, int arity) {
+		this.resultClass = resultClass;
+		this.arity = arity;
+		this.constructor = getConstructor(resultClass, arity);
+	}
+
+	private static MethodHandle getConstructor(Class<?> resultClass, int arity) {
+		ConcurrentMap<Integer, MethodHandle> constructors = CONSTRUCTORS.get(resultClass);
+		MethodHandle constructor = constructors.get(arity);
+		if (constructor == null) {
+			constructor = findConstructor(resultClass, arity);
+			constructors.putIfAbsent(arity, constructor);
+		}
+		return constructor;
+	}
+
+	private static MethodHandle findConstructor(Class<?> resultClass, int arity) {
+		Constructor<?> found = null;
+		for (Constructor<?> candidate : resultClass.getDeclaredConstructors()) {
+			if (candidate.getParameterTypes().length == arity) {
+				if (found != null) {
+					throw new RuntimeException(
+							resultClass.getName() + " has more than one constructor with " + arity + " parameters");
+				}
+				found = candidate;
+			}
+		}
+		if (found == null) {
+			throw new RuntimeException(resultClass.getName() + " has no constructor with " + arity + " parameters");
+		}
+		try {
+			found.setAccessible(true);
+			return MethodHandles.lookup().unreflectConstructor(found)
+					.asType(MethodType.genericMethodType(arity).changeReturnType(Object.class))
+					.asSpreader(Object[].class, arity);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Could not access the constructor of " + resultClass.getName(), e);
+		}
+	}
+
+	@Override
+	public Object transformTuple(Object[] tuple, String[] aliases) {
+		if (constructor == null) {
+			constructor = getConstructor(resultClass, arity);
+		}
+		try {
+			return constructor.invokeExact(tuple);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException("Could not create " + resultClass.getName(), e);
+		}
+	}
+
+	@Override
+	public boolean isTransformedValueATupleElement(String[] aliases, int tupleLength) {
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof ConstructorTransformer && ((ConstructorTransformer) obj).resultClass.equals(resultClass)
+				&& ((ConstructorTransformer) obj).arity == arity;
+	}
+
+	@Override
+	public int hashCode() {
+		return resultClass.hashCode() * 31 + arity;
+	}
+}
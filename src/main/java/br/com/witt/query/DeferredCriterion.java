@@ -0,0 +1,46 @@
+package br.com.witt.query;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.engine.spi.TypedValue;
+
+/**
+ * Criterion whose actual implementation is created once per execution. Some
+ * Hibernate criteria keep state between the SQL generation and the parameter
+ * binding, so they can not be shared by concurrent executions of the same
+ * {@link QueryTemplate}.
+ *
+ * @author Luciano Witt
+ *
+ */
+abstract class DeferredCriterion implements Criterion {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient Criterion criterion;
+
+	protected abstract Criterion create();
+
+	private Criterion getDelegate() {
+		ExecutionContext context = ExecutionContext.current();
+		if (context != null) {
+			return context.resolve(this);
+		}
+		if (criterion == null) {
+			criterion = create();
+		}
+		return criterion;
+	}
+
+	@Override
+	public String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		return getDelegate().toSqlString(criteria, criteriaQuery);
+	}
+
+	@Override
+	public TypedValue[] getTypedValues(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		return getDelegate().getTypedValues(criteria, criteriaQuery);
+	}
+}
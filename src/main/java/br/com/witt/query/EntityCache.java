@@ -0,0 +1,49 @@
+package br.com.witt.query;
+
+import java.util.Set;
+
+/**
+ * In-process cache of values computed by queries, as their results or their
+ * row counts, kept by the key of the query and dropped when a change to an
+ * entity read by the query is committed.
+ *
+ * @param <V> the type of the cached values
+ *
+ * @see LruEntityCache
+ * @see EntityCacheInvalidator
+ *
+ * @author Luciano Witt
+ *
+ */
+public interface EntityCache<V> {
+
+	/**
+	 * Returns the cached value for the given query key, or null if there is none.
+	 *
+	 * @param key the query key
+	 * @return the value
+	 */
+	V get(Object key);
+
+	/**
+	 * Caches the value of the query with the given key, which reads the given
+	 * entity classes.
+	 *
+	 * @param key the query key
+	 * @param entityClasses the classes of the entities read by the query
+	 * @param value the value
+	 */
+	void put(Object key, Set<Class<?>> entityClasses, V value);
+
+	/**
+	 * Removes the values of every query that reads the given entity class.
+	 *
+	 * @param entityClass the changed entity class
+	 */
+	void invalidate(Class<?> entityClass);
+
+	/**
+	 * Removes every cached value.
+	 */
+	void clear();
+}
@@ -0,0 +1,98 @@
+package br.com.witt.query;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Hibernate event listener that invalidates, on {@link EntityCache caches} as
+ * the {@link ResultCache} and the
+ * {@link br.com.witt.query.pagination.CountCache CountCache}, the values of the
+ * queries that read the inserted, updated or deleted entities, after the
+ * transaction that changed them is committed. Invalidating before the commit
+ * would let other sessions cache the old values again until the commit. It
+ * must be registered on the session factory event listener registry:
+ *
+ * <pre>
+ * EntityCacheInvalidator invalidator = new EntityCacheInvalidator(resultCache, countCache);
+ * EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+ * 		.getService(EventListenerRegistry.class);
+ * registry.appendListeners(EventType.POST_COMMIT_INSERT, invalidator);
+ * registry.appendListeners(EventType.POST_COMMIT_UPDATE, invalidator);
+ * registry.appendListeners(EventType.POST_COMMIT_DELETE, invalidator);
+ * </pre>
+ *
+ * @author Luciano Witt
+ *
+ */
+public class EntityCacheInvalidator
+		implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient EntityCache<?>[] caches;
+
+	public EntityCacheInvalidator(EntityCache<?>... caches) {
+		this.caches = caches;
+	}
+
+	/**
+	 * Tells if the given session has writes that are not committed yet, either
+	 * queued or already flushed, so what it reads must not be shared with other
+	 * sessions. The flushed writes are known while their transaction is open
+	 * only when a post-commit listener, as this one, or a second level cache
+	 * waits for its completion.
+	 *
+	 * @param session the Hibernate session
+	 * @return true if the session has uncommitted writes
+	 */
+	public static boolean hasUncommittedWrites(Session session) {
+		ActionQueue actions = ((EventSource) session).getActionQueue();
+		return actions.hasAnyQueuedActions() || actions.hasAfterTransactionActions();
+	}
+
+	private void invalidate(EntityPersister persister) {
+		for (EntityCache<?> cache : caches) {
+			cache.invalidate(persister.getMappedClass());
+		}
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		invalidate(event.getPersister());
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		invalidate(event.getPersister());
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		invalidate(event.getPersister());
+	}
+
+	@Override
+	public void onPostInsertCommitFailed(PostInsertEvent event) {
+	}
+
+	@Override
+	public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+	}
+
+	@Override
+	public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+	}
+
+	@Override
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return true;
+	}
+}
@@ -0,0 +1,94 @@
+package br.com.witt.query;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.criterion.Criterion;
+
+/**
+ * State of a single execution of a {@link QueryTemplate}, bound to the current
+ * thread while the query runs: the parameter values, the criteria that must be
+ * created once per execution, and the values of the materialized subqueries.
+ *
+ * @author Luciano Witt
+ *
+ */
+class ExecutionContext {
+
+	private static final ThreadLocal<ExecutionContext> CURRENT = new ThreadLocal<ExecutionContext>();
+
+	private ExecutionContext previous;
+	private Map<String, Object> parameters;
+	private Map<DeferredCriterion, Criterion> criteria;
+	private Map<Query, List<Object>> materialized;
+
+	private ExecutionContext(ExecutionContext previous, Map<String, Object> parameters) {
+		this.previous = previous;
+		this.parameters = parameters;
+		this.criteria = new IdentityHashMap<DeferredCriterion, Criterion>();
+		this.materialized = new IdentityHashMap<Query, List<Object>>();
+	}
+
+	static ExecutionContext open(Map<String, Object> parameters) {
+		ExecutionContext context = new ExecutionContext(CURRENT.get(), parameters);
+		CURRENT.set(context);
+		return context;
+	}
+
+	static ExecutionContext current() {
+		return CURRENT.get();
+	}
+
+	static Object getParameter(String name) {
+		ExecutionContext context = CURRENT.get();
+		if (context == null || context.parameters == null || !context.parameters.containsKey(name)) {
+			throw new RuntimeException("Parameter " + name + " is not bound");
+		}
+		return context.parameters.get(name);
+	}
+
+	/**
+	 * Returns the values of the given {@link Query#materialize() materialized}
+	 * subquery, bound to the current context or to the ones it is nested in, or
+	 * null when the subquery was not materialized.
+	 */
+	static List<Object> getMaterialized(Query subquery) {
+		for (ExecutionContext context = CURRENT.get(); context != null; context = context.previous) {
+			List<Object> values = context.materialized.get(subquery);
+			if (values != null) {
+				return values;
+			}
+		}
+		return null;
+	}
+
+	boolean isMaterialized(Query subquery) {
+		return materialized.containsKey(subquery);
+	}
+
+	/**
+	 * Binds the values of the given subquery to this context. Null values mean
+	 * that the subquery is run inline, as its results exceed its threshold.
+	 */
+	void materialize(Query subquery, List<Object> values) {
+		materialized.put(subquery, values);
+	}
+
+	Criterion resolve(DeferredCriterion deferred) {
+		Criterion criterion = criteria.get(deferred);
+		if (criterion == null) {
+			criterion = deferred.create();
+			criteria.put(deferred, criterion);
+		}
+		return criterion;
+	}
+
+	void close() {
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+}
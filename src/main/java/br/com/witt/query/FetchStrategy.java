@@ -0,0 +1,64 @@
+package br.com.witt.query;
+
+/**
+ * How an association of the root entities is loaded by a query.
+ *
+ * <ul>
+ * <li>{@link #JOIN}: on the query itself, with an outer join. In page queries,
+ * a collection is loaded as with {@link #SUBSELECT}, so the page is not cut in
+ * the middle of the joined rows;</li>
+ * <li>{@link #SUBSELECT}: after the query, with a second query that loads the
+ * association of every root entity returned, by their primary keys;</li>
+ * <li>{@link #batch(int) BATCH(n)}: after the query, with one query for each n
+ * root entities returned.</li>
+ * </ul>
+ *
+ * @see Query#fetch(String, FetchStrategy)
+ *
+ * @author Luciano Witt
+ *
+ */
+public final class FetchStrategy {
+
+	public static final FetchStrategy JOIN = new FetchStrategy("JOIN", 0);
+	public static final FetchStrategy SUBSELECT = new FetchStrategy("SUBSELECT", 0);
+
+	private String name;
+	private int batchSize;
+
+	private FetchStrategy(String name, int batchSize) {
+		this.name = name;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Loads the association after the query, with one query for each batch of the
+	 * given number of root entities.
+	 *
+	 * @param size the number of root entities of each batch
+	 * @return {@link FetchStrategy}
+	 */
+	public static FetchStrategy batch(int size) {
+		if (size <= 0) {
+			throw new RuntimeException("Batch size must be positive");
+		}
+		return new FetchStrategy("BATCH", size);
+	}
+
+	protected boolean isJoin() {
+		return this == JOIN;
+	}
+
+	/**
+	 * Returns the number of root entities of each batch, or 0 to load the
+	 * association of every root entity at once.
+	 */
+	protected int getBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public String toString() {
+		return (batchSize > 0 ? name + "(" + batchSize + ")" : name);
+	}
+}
@@ -0,0 +1,138 @@
+package br.com.witt.query;
+
+import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
+
+/**
+ * Execution hints of the query, applied to the Hibernate criteria on every
+ * execution. Hints that are not set keep the Hibernate defaults.
+ *
+ * @see Query#hints()
+ *
+ * @author Luciano Witt
+ *
+ */
+public class Hints {
+
+	private Query query;
+	private Integer fetchSize;
+	private Integer timeout;
+	private boolean readOnly;
+	private FlushMode flushMode;
+	private String comment;
+
+	protected Hints(Query query) {
+		this.query = query;
+		fetchSize = null;
+		timeout = null;
+		readOnly = false;
+		flushMode = null;
+		comment = null;
+	}
+
+	protected Hints(Hints hints) {
+		query = null;
+		fetchSize = hints.fetchSize;
+		timeout = hints.timeout;
+		readOnly = hints.readOnly;
+		flushMode = hints.flushMode;
+		comment = hints.comment;
+	}
+
+	/**
+	 * Sets the number of rows fetched from the database on each round trip.
+	 *
+	 * @param fetchSize the JDBC fetch size
+	 * @return {@link Hints}
+	 */
+	public Hints fetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Sets the time the database may take to execute the query.
+	 *
+	 * @param timeout the timeout, in seconds
+	 * @return {@link Hints}
+	 */
+	public Hints timeout(int timeout) {
+		this.timeout = timeout;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Loads the entities as read-only, so the session keeps no snapshots of them
+	 * for dirty checking.
+	 *
+	 * @return {@link Hints}
+	 */
+	public Hints readOnly() {
+		this.readOnly = true;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Sets the flush mode of the session during the query. With
+	 * {@link FlushMode#MANUAL}, the session is not flushed before the query.
+	 *
+	 * @param flushMode
+	 * @return {@link Hints}
+	 */
+	public Hints flushMode(FlushMode flushMode) {
+		this.flushMode = flushMode;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Adds the given comment to the SQL, when comments are enabled on the session
+	 * factory, to tag the query on the database logs.
+	 *
+	 * @param comment
+	 * @return {@link Hints}
+	 */
+	public Hints comment(String comment) {
+		this.comment = comment;
+		modified();
+		return this;
+	}
+
+	private void modified() {
+		if (query != null) {
+			query.modified();
+		}
+	}
+
+	protected Integer getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Applies the hints to the given criteria. The read-only mode and the flush
+	 * mode only apply to stateful sessions.
+	 * 
+	 * @param criteria
+	 * @param stateful if the criteria are executed on a stateful session
+	 */
+	protected void apply(Criteria criteria, boolean stateful) {
+		if (fetchSize != null) {
+			criteria.setFetchSize(fetchSize);
+		}
+		if (timeout != null) {
+			criteria.setTimeout(timeout);
+		}
+		if (readOnly && stateful) {
+			criteria.setReadOnly(true);
+		}
+		if (flushMode != null && stateful) {
+			criteria.setFlushMode(flushMode);
+		}
+		if (comment != null) {
+			criteria.setComment(comment);
+		}
+	}
+}
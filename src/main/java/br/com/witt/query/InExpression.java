@@ -0,0 +1,152 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.engine.spi.TypedValue;
+
+/**
+ * Criterion for IN and NOT IN lists, with literal values or with the values
+ * bound to a {@link Parameter}.
+ * <p>
+ * The length of the list is padded to the next power of two, repeating its last
+ * value, so lists of different lengths share the same few SQL strings on the
+ * statement caches. Lists longer than {@link #CHUNK_SIZE} are split into chunks
+ * of this size, OR-ed for IN and AND-ed for NOT IN, to stay below the limit of
+ * values in a single list of the databases (1000 on Oracle).
+ *
+ * @author Luciano Witt
+ *
+ */
+class InExpression implements Criterion {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String IN = "in";
+	static final String NOT_IN = "not in";
+
+	/**
+	 * Maximum number of values of each list in the SQL.
+	 */
+	static final int CHUNK_SIZE = 512;
+
+	private String property;
+	private String op;
+	private Object values;
+
+	/**
+	 * @param property
+	 * @param op {@link #IN} or {@link #NOT_IN}
+	 * @param values the values, as an array, a collection or a {@link Parameter}
+	 */
+	InExpression(String property, String op, Object values) {
+		this.property = property;
+		this.op = op;
+		this.values = values;
+	}
+
+	@Override
+	public String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		String[] columns = criteriaQuery.findColumns(property, criteria);
+		int size = getValues().size();
+		if (size == 0) {
+			return (IN.equals(op) ? "1=0" : "1=1");
+		}
+
+		StringBuilder placeholder = new StringBuilder();
+		if (columns.length > 1) {
+			placeholder.append('(');
+		}
+		for (int i = 0; i < columns.length; i++) {
+			placeholder.append(i == 0 ? "?" : ", ?");
+		}
+		if (columns.length > 1) {
+			placeholder.append(')');
+		}
+
+		StringBuilder column = new StringBuilder();
+		if (columns.length > 1) {
+			column.append('(');
+			for (int i = 0; i < columns.length; i++) {
+				column.append(i == 0 ? "" : ", ").append(columns[i]);
+			}
+			column.append(')');
+		} else {
+			column.append(columns[0]);
+		}
+
+		int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		StringBuilder sql = new StringBuilder();
+		if (chunks > 1) {
+			sql.append('(');
+		}
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			if (chunk > 0) {
+				sql.append(IN.equals(op) ? " or " : " and ");
+			}
+			sql.append(column).append(' ').append(op).append(" (");
+			int length = padded(Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE));
+			for (int i = 0; i < length; i++) {
+				sql.append(i == 0 ? "" : ", ").append(placeholder);
+			}
+			sql.append(')');
+		}
+		if (chunks > 1) {
+			sql.append(')');
+		}
+		return sql.toString();
+	}
+
+	@Override
+	public TypedValue[] getTypedValues(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		List<Object> values = getValues();
+		List<TypedValue> typedValues = new ArrayList<TypedValue>(padded(values.size()));
+		for (int first = 0; first < values.size(); first += CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, values.size() - first);
+			int paddedLength = padded(length);
+			for (int i = 0; i < paddedLength; i++) {
+				Object value = values.get(first + Math.min(i, length - 1));
+				typedValues.add(criteriaQuery.getTypedValue(criteria, property, value));
+			}
+		}
+		return typedValues.toArray(new TypedValue[typedValues.size()]);
+	}
+
+	/**
+	 * Returns the next power of two greater than or equal to the given length.
+	 */
+	private static int padded(int length) {
+		return (length <= 1 ? length : Integer.highestOneBit(length - 1) << 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	List<Object> getValues() {
+		Object value = (values instanceof Parameter ? ((Parameter) values).getValue() : values);
+		if (value == null) {
+			return Collections.emptyList();
+		} else if (value instanceof List) {
+			return (List<Object>) value;
+		} else if (value instanceof Collection) {
+			return new ArrayList<Object>((Collection<Object>) value);
+		} else if (value instanceof Object[]) {
+			return Arrays.asList((Object[]) value);
+		} else {
+			return Collections.singletonList(value);
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (values instanceof Parameter) {
+			return property + " " + op + " " + values;
+		}
+		return property + " " + op + " " + getValues();
+	}
+}
@@ -1,33 +1,99 @@
 package br.com.witt.query;
 
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.sql.JoinType;
 
 public class Join {
 
+	private Query query;
 	private String path;
 	private String alias;
 	private JoinType type;
 	private Where on;
+	private boolean optional;
 
-	protected Join(String path, String alias, JoinType type) {
+	protected Join(Query query, String path, String alias, JoinType type) {
+		this.query = query;
 		this.path = path;
 		this.alias = alias;
 		this.type = type;
+		this.optional = false;
 	}
 
 	public Where on() {
 		if (on == null) {
-			on = new Where(null);
+			on = new Where(query, null);
+			query.modified();
 		}
 		return on;
 	}
 
+	/**
+	 * Marks this join as optional: it is left out of the SQL when its alias is not
+	 * referenced by the select, the where, the orders or the other joins, even if
+	 * it is an inner join or a join to a collection. Unreferenced left joins to a
+	 * single entity are always left out, as they can not change the rows.
+	 * 
+	 * @return This {@link Join join}
+	 */
+	public Join optional() {
+		optional = true;
+		query.modified();
+		return this;
+	}
+
+	protected boolean isOptional() {
+		return optional;
+	}
+
+	/**
+	 * Tells if this join may reference the given alias, on its association path
+	 * or on its condition.
+	 * 
+	 * @param alias
+	 * @return true if the alias may be referenced
+	 */
+	protected boolean references(String alias) {
+		return Condition.references(path, alias) || (on != null && on.references(alias));
+	}
+
+	protected void describe(CanonicalForm form) {
+		form.append(type.name()).append(" ").append(path).append(" ").append(alias);
+		if (optional) {
+			form.append(" optional");
+		}
+		if (on != null) {
+			form.append(" on ");
+			on.describe(form);
+		}
+	}
+
+	protected String getPath() {
+		return path;
+	}
+
+	protected String getAlias() {
+		return alias;
+	}
+
+	protected JoinType getType() {
+		return type;
+	}
+
+	protected Criterion getCriterion() {
+		return (on == null ? null : on.getCriterion());
+	}
+
 	protected void apply(DetachedCriteria criteria) {
-		if (on == null) {
+		apply(criteria, getCriterion());
+	}
+
+	protected void apply(DetachedCriteria criteria, Criterion criterion) {
+		if (criterion == null) {
 			criteria.createAlias(path, alias, type);
 		} else {
-			criteria.createAlias(path, alias, type, on.getCriterion());
+			criteria.createAlias(path, alias, type, criterion);
 		}
 	}
 }
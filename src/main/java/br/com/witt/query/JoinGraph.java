@@ -0,0 +1,95 @@
+package br.com.witt.query;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+/**
+ * Resolves, with the Hibernate metadata, the entities reached by the joins of a
+ * query, by their aliases.
+ *
+ * @author Luciano Witt
+ *
+ */
+class JoinGraph {
+
+	private Class<?> fromClass;
+	private String fromAlias;
+	private List<Join> joins;
+	private SessionFactory factory;
+
+	JoinGraph(Class<?> fromClass, String fromAlias, List<Join> joins, SessionFactory factory) {
+		this.fromClass = fromClass;
+		this.fromAlias = fromAlias;
+		this.joins = joins;
+		this.factory = factory;
+	}
+
+	/**
+	 * Tells if the given join is known to reach at most one entity for each row.
+	 */
+	boolean isToOne(Join join) {
+		try {
+			return getPropertyType(join.getPath()).isEntityType();
+		} catch (HibernateException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the classes of the root entity and of every joined entity.
+	 */
+	Set<Class<?>> getEntityClasses() {
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		classes.add(fromClass);
+		for (Join join : joins) {
+			String entityName = getEntityName(join.getAlias());
+			if (entityName != null) {
+				classes.add(factory.getClassMetadata(entityName).getMappedClass());
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * Returns the type of the given association path, that starts either with
+	 * an alias of the query or with a property of the root entity.
+	 */
+	Type getPropertyType(String path) {
+		String entityName = factory.getClassMetadata(fromClass).getEntityName();
+		String property = path;
+		int dot = path.indexOf('.');
+		if (dot > 0) {
+			String owner = getEntityName(path.substring(0, dot));
+			if (owner != null) {
+				entityName = owner;
+				property = path.substring(dot + 1);
+			}
+		}
+		return factory.getClassMetadata(entityName).getPropertyType(property);
+	}
+
+	String getEntityName(String alias) {
+		if (alias.equals(fromAlias)) {
+			return factory.getClassMetadata(fromClass).getEntityName();
+		}
+		for (Join join : joins) {
+			if (alias.equals(join.getAlias())) {
+				Type type = getPropertyType(join.getPath());
+				if (type.isEntityType()) {
+					return ((EntityType) type).getAssociatedEntityName();
+				} else if (type.isCollectionType()) {
+					return ((CollectionType) type).getAssociatedEntityName((SessionFactoryImplementor) factory);
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,72 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sort key used by the keyset (seek) pagination of a {@link Query}. Instead
+ * of skipping the rows of the previous pages, the next page is fetched with a
+ * predicate that seeks past the key of the last row already seen, so every page
+ * costs the same as the first one.
+ * <p>
+ * The key properties must belong to the root entity and, together, must
+ * identify a single row. The nulls of the nullable properties are sorted
+ * last, both in ascending and in descending order, so the rows with null key
+ * values are paged too. The pages are ordered by the key, in place of the
+ * {@link Query#orderBy() order by} of the query.
+ *
+ * @see Query#keyset()
+ *
+ * @author Luciano Witt
+ *
+ */
+public class Keyset {
+
+	private Query query;
+	private List<String> properties;
+	private List<Boolean> ascending;
+
+	protected Keyset(Query query) {
+		this.query = query;
+		properties = new ArrayList<String>();
+		ascending = new ArrayList<Boolean>();
+	}
+
+	/**
+	 * Adds the given property, in ascending order, to the key.
+	 *
+	 * @param property
+	 * @return {@link Keyset}
+	 */
+	public Keyset asc(String property) {
+		properties.add(property);
+		ascending.add(Boolean.TRUE);
+		query.modified();
+		return this;
+	}
+
+	/**
+	 * Adds the given property, in descending order, to the key.
+	 *
+	 * @param property
+	 * @return {@link Keyset}
+	 */
+	public Keyset desc(String property) {
+		properties.add(property);
+		ascending.add(Boolean.FALSE);
+		query.modified();
+		return this;
+	}
+
+	protected boolean isEmpty() {
+		return properties.isEmpty();
+	}
+
+	protected List<String> getProperties() {
+		return properties;
+	}
+
+	protected List<Boolean> getAscending() {
+		return ascending;
+	}
+}
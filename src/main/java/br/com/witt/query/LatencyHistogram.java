@@ -0,0 +1,125 @@
+package br.com.witt.query;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with a fixed relative precision, in the manner of
+ * HdrHistogram: values are kept in microseconds, exactly up to 128, and above
+ * that in 64 buckets for each power of two, so a recorded value is off by less
+ * than 1.6%. Values above about 25 days are recorded as the highest
+ * trackable value. It is thread safe and never allocates while recording.
+ *
+ * @see LatencyRecorder
+ *
+ * @author Luciano Witt
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR = SUB_BUCKETS * 2;
+	private static final int MAX_MAGNITUDE = 40;
+	private static final long HIGHEST_TRACKABLE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+	private AtomicLongArray counts;
+	private AtomicLong count;
+	private AtomicLong sum;
+	private AtomicLong max;
+
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(index(HIGHEST_TRACKABLE) + 1);
+		count = new AtomicLong();
+		sum = new AtomicLong();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records the given latency.
+	 *
+	 * @param nanos the latency, in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0L), HIGHEST_TRACKABLE);
+		counts.incrementAndGet(index(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the highest latency recorded, in nanoseconds.
+	 *
+	 * @return the maximum latency
+	 */
+	public long getMax() {
+		return TimeUnit.MICROSECONDS.toNanos(max.get());
+	}
+
+	/**
+	 * Returns the mean of the latencies recorded, in nanoseconds.
+	 *
+	 * @return the mean latency
+	 */
+	public long getMean() {
+		long n = count.get();
+		return (n == 0L ? 0L : TimeUnit.MICROSECONDS.toNanos(sum.get() / n));
+	}
+
+	/**
+	 * Returns the latency below which the given percentage of the recorded
+	 * latencies fall, in nanoseconds, as the highest value of its bucket.
+	 *
+	 * @param percentile the percentage, from 0 to 100
+	 * @return the latency at the percentile
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0L) {
+			return 0L;
+		}
+		long target = Math.max((long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * n), 1L);
+		long seen = 0L;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return TimeUnit.MICROSECONDS.toNanos(Math.min(highestValue(i), max.get()));
+			}
+		}
+		return getMax();
+	}
+
+	private static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return LINEAR + (magnitude - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long highestValue(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int magnitude = (index - LINEAR) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		int shift = magnitude - SUB_BUCKET_BITS;
+		long lowest = ((long) ((index - LINEAR) % SUB_BUCKETS) + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count " + getCount() + ", mean " + getMean() + " ns, p50 " + getValueAtPercentile(50) + " ns, p99 "
+				+ getValueAtPercentile(99) + " ns, max " + getMax() + " ns";
+	}
+}
@@ -0,0 +1,93 @@
+package br.com.witt.query;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link QueryInstrumentation Instrumentation} that records the total latency
+ * of the executions in a {@link LatencyHistogram histogram} for each query
+ * shape, so the executions of a query that differ only by their literal values
+ * are recorded together. The number of shapes is bounded: once it is reached,
+ * the executions of new shapes are recorded together in an
+ * {@link #getOverflowHistogram() overflow histogram}.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class LatencyRecorder implements QueryInstrumentation {
+
+	private final int maxShapes;
+	private ConcurrentHashMap<String, LatencyHistogram> histograms;
+	private volatile LatencyHistogram overflow;
+
+	/**
+	 * Creates a recorder that keeps up to 1000 shapes.
+	 */
+	public LatencyRecorder() {
+		this(1000);
+	}
+
+	/**
+	 * Creates a recorder that keeps up to the given number of shapes.
+	 *
+	 * @param maxShapes the maximum number of shapes with their own histogram
+	 */
+	public LatencyRecorder(int maxShapes) {
+		if (maxShapes <= 0) {
+			throw new RuntimeException("Maximum number of shapes must be positive");
+		}
+		this.maxShapes = maxShapes;
+		histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+		overflow = new LatencyHistogram();
+	}
+
+	@Override
+	public void executed(QueryExecution execution) {
+		String shape = execution.getFingerprint().getShape();
+		LatencyHistogram histogram = histograms.get(shape);
+		if (histogram == null) {
+			if (histograms.size() >= maxShapes) {
+				histogram = overflow;
+			} else {
+				histogram = histograms.computeIfAbsent(shape, key -> new LatencyHistogram());
+			}
+		}
+		histogram.record(execution.getTotalNanos());
+	}
+
+	/**
+	 * Returns the histogram of the shape of the given fingerprint, or null if no
+	 * query with this shape was executed.
+	 *
+	 * @param fingerprint
+	 * @return {@link LatencyHistogram}
+	 */
+	public LatencyHistogram getHistogram(QueryFingerprint fingerprint) {
+		return histograms.get(fingerprint.getShape());
+	}
+
+	/**
+	 * Returns the histograms, by query shape.
+	 *
+	 * @return the histograms
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		return Collections.unmodifiableMap(histograms);
+	}
+
+	/**
+	 * Returns the histogram of the executions of the shapes that found the
+	 * recorder full.
+	 *
+	 * @return {@link LatencyHistogram}
+	 */
+	public LatencyHistogram getOverflowHistogram() {
+		return overflow;
+	}
+
+	public void clear() {
+		histograms.clear();
+		overflow = new LatencyHistogram();
+	}
+}
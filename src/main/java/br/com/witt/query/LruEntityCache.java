@@ -0,0 +1,129 @@
+package br.com.witt.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory {@link EntityCache}, bounded by the total weight of the cached
+ * values, that evicts the least recently used values and expires the values
+ * after a time to live.
+ *
+ * @param <V> the type of the cached values
+ *
+ * @author Luciano Witt
+ *
+ */
+public class LruEntityCache<V> implements EntityCache<V> {
+
+	private final long maxWeight;
+	private final long timeToLive;
+	private final LinkedHashMap<Object, Entry<V>> entries;
+	private long weight;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxWeight the maximum total weight of the cached values
+	 * @param timeToLive the time, in milliseconds, a value stays in the cache
+	 */
+	public LruEntityCache(long maxWeight, long timeToLive) {
+		if (maxWeight <= 0) {
+			throw new RuntimeException("Cache weight must be positive");
+		}
+		this.maxWeight = maxWeight;
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<Object, Entry<V>>(16, 0.75f, true);
+		this.weight = 0;
+	}
+
+	/**
+	 * Returns the weight of the given value, one by default.
+	 *
+	 * @param value
+	 * @return the weight of the value
+	 */
+	protected long weigh(V value) {
+		return 1;
+	}
+
+	@Override
+	public synchronized V get(Object key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiration < System.currentTimeMillis()) {
+			remove(key);
+			return null;
+		}
+		return entry.value;
+	}
+
+	@Override
+	public synchronized void put(Object key, Set<Class<?>> entityClasses, V value) {
+		long valueWeight = weigh(value);
+		remove(key);
+		if (valueWeight > maxWeight) {
+			return;
+		}
+		entries.put(key, new Entry<V>(entityClasses, value, valueWeight, System.currentTimeMillis() + timeToLive));
+		weight += valueWeight;
+
+		Iterator<Entry<V>> iterator = entries.values().iterator();
+		while (weight > maxWeight && iterator.hasNext()) {
+			weight -= iterator.next().weight;
+			iterator.remove();
+		}
+	}
+
+	private void remove(Object key) {
+		Entry<V> entry = entries.remove(key);
+		if (entry != null) {
+			weight -= entry.weight;
+		}
+	}
+
+	@Override
+	public synchronized void invalidate(Class<?> entityClass) {
+		Iterator<Entry<V>> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry<V> entry = iterator.next();
+			if (entry.reads(entityClass)) {
+				weight -= entry.weight;
+				iterator.remove();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	private static class Entry<V> {
+
+		private Set<Class<?>> entityClasses;
+		private V value;
+		private long weight;
+		private long expiration;
+
+		private Entry(Set<Class<?>> entityClasses, V value, long weight, long expiration) {
+			this.entityClasses = entityClasses;
+			this.value = value;
+			this.weight = weight;
+			this.expiration = expiration;
+		}
+
+		private boolean reads(Class<?> entityClass) {
+			for (Class<?> readClass : entityClasses) {
+				if (readClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(readClass)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
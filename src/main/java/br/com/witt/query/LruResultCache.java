@@ -0,0 +1,39 @@
+package br.com.witt.query;
+
+import java.util.Collection;
+
+/**
+ * In-memory {@link ResultCache}, bounded by the total number of cached rows,
+ * that evicts the least recently used results and expires the results after a
+ * time to live.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class LruResultCache extends LruEntityCache<Object> implements ResultCache {
+
+	/**
+	 * Creates a result cache.
+	 *
+	 * @param maxWeight the maximum number of cached rows
+	 * @param timeToLive the time, in milliseconds, a result stays in the cache
+	 */
+	public LruResultCache(long maxWeight, long timeToLive) {
+		super(maxWeight, timeToLive);
+	}
+
+	/**
+	 * Returns the weight of the given result: the number of rows of a collection,
+	 * and one for other results.
+	 *
+	 * @param result
+	 * @return the weight of the result
+	 */
+	@Override
+	protected long weigh(Object result) {
+		if (result instanceof Collection) {
+			return Math.max(1, ((Collection<?>) result).size());
+		}
+		return 1;
+	}
+}
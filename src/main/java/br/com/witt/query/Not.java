@@ -18,6 +18,37 @@ public class Not extends Condition {
 		this.conditionToNegate = conditionToNegate;
 	}
 
+	@Override
+	protected boolean references(String alias) {
+		return conditionToNegate != null && conditionToNegate.references(alias);
+	}
+
+	@Override
+	protected void describe(CanonicalForm form) {
+		form.append("not ");
+		if (conditionToNegate != null) {
+			conditionToNegate.describe(form);
+		}
+	}
+
+	@Override
+	protected Condition optimize(boolean negated) {
+		if (conditionToNegate == null) {
+			return this;
+		}
+		Condition condition = conditionToNegate.optimize(true);
+		if (condition == ConstantCondition.TRUE) {
+			return ConstantCondition.FALSE;
+		} else if (condition == ConstantCondition.FALSE) {
+			return ConstantCondition.TRUE;
+		} else if (condition instanceof Not && !((Not) condition).isEmpty()) {
+			return ((Not) condition).conditionToNegate;
+		}
+		Not not = new Not();
+		not.setConditionToNegate(condition);
+		return not;
+	}
+
 	@Override
 	protected Criterion getCriterion() {
 		return Restrictions.not(conditionToNegate.getCriterion());
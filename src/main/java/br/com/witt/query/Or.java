@@ -1,5 +1,13 @@
 package br.com.witt.query;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Restrictions;
@@ -10,6 +18,68 @@ public class Or extends BooleanOperator {
 		super(firstCondition);
 	}
 
+	@Override
+	protected void describe(CanonicalForm form) {
+		describe(form, " or ");
+	}
+
+	/**
+	 * Flattens the nested disjunctions, removes the duplicated conditions, and
+	 * folds the equalities of the same property to different values into a
+	 * single IN.
+	 */
+	@Override
+	protected Condition optimize(boolean negated) {
+		List<Condition> conditions = optimizeConditions(negated);
+		Map<String, List<Object>> equalities = new LinkedHashMap<String, List<Object>>();
+		Iterator<Condition> iterator = conditions.iterator();
+		while (iterator.hasNext()) {
+			Condition condition = iterator.next();
+			if (condition == ConstantCondition.TRUE) {
+				return ConstantCondition.TRUE;
+			} else if (condition == ConstantCondition.FALSE) {
+				iterator.remove();
+			} else if (getEqualityProperty(condition) != null) {
+				String property = getEqualityProperty(condition);
+				if (!equalities.containsKey(property)) {
+					equalities.put(property, new ArrayList<Object>());
+				}
+				equalities.get(property).add(((SimpleCondition) condition).getValues()[0]);
+			}
+		}
+
+		List<Condition> result = new ArrayList<Condition>();
+		Set<String> folded = new HashSet<String>();
+		for (Condition condition : conditions) {
+			String property = getEqualityProperty(condition);
+			if (property == null || equalities.get(property).size() == 1) {
+				result.add(condition);
+			} else if (folded.add(property)) {
+				Object[] values = equalities.get(property).toArray();
+				result.add(new SimpleCondition(new InExpression(property, InExpression.IN, values), "in",
+						new String[] { property }, values));
+			}
+		}
+
+		if (result.isEmpty()) {
+			return ConstantCondition.FALSE;
+		} else if (result.size() == 1) {
+			return result.get(0);
+		}
+		Or or = new Or(result.get(0));
+		for (int i = 1; i < result.size(); i++) {
+			or.addCondition(result.get(i));
+		}
+		return or;
+	}
+
+	private static String getEqualityProperty(Condition condition) {
+		if (condition instanceof SimpleCondition && "=".equals(((SimpleCondition) condition).getOperator())) {
+			return ((SimpleCondition) condition).getComparedProperty();
+		}
+		return null;
+	}
+
 	@Override
 	protected Criterion getCriterion() {
 		Disjunction or = Restrictions.disjunction();
@@ -0,0 +1,84 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.NullPrecedence;
+import org.hibernate.criterion.Order;
+
+/**
+ * The ORDER BY part of the SQL query. When a page of root entities is
+ * requested, the primary key of the root entity is appended as the last order,
+ * so the pages are deterministic.
+ *
+ * @see Query#orderBy()
+ *
+ * @author Luciano Witt
+ *
+ */
+public class OrderBy {
+
+	private Query query;
+	private List<Order> orders;
+
+	protected OrderBy(Query query) {
+		this.query = query;
+		orders = new ArrayList<Order>();
+	}
+
+	/**
+	 * Orders the result by the given property, in ascending order.
+	 *
+	 * @param property
+	 * @return {@link OrderBy}
+	 */
+	public OrderBy asc(String property) {
+		orders.add(Order.asc(property));
+		query.modified();
+		return this;
+	}
+
+	/**
+	 * Orders the result by the given property, in ascending order, with the null
+	 * values first or last.
+	 *
+	 * @param property
+	 * @param nulls
+	 * @return {@link OrderBy}
+	 */
+	public OrderBy asc(String property, NullPrecedence nulls) {
+		orders.add(Order.asc(property).nulls(nulls));
+		query.modified();
+		return this;
+	}
+
+	/**
+	 * Orders the result by the given property, in descending order.
+	 *
+	 * @param property
+	 * @return {@link OrderBy}
+	 */
+	public OrderBy desc(String property) {
+		orders.add(Order.desc(property));
+		query.modified();
+		return this;
+	}
+
+	/**
+	 * Orders the result by the given property, in descending order, with the null
+	 * values first or last.
+	 *
+	 * @param property
+	 * @param nulls
+	 * @return {@link OrderBy}
+	 */
+	public OrderBy desc(String property, NullPrecedence nulls) {
+		orders.add(Order.desc(property).nulls(nulls));
+		query.modified();
+		return this;
+	}
+
+	protected List<Order> getOrders() {
+		return orders;
+	}
+}
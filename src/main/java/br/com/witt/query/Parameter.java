@@ -0,0 +1,57 @@
+package br.com.witt.query;
+
+/**
+ * A named placeholder for a value that is only known at execution time. It can
+ * be used in the place of a value in the {@link Where where} conditions, and
+ * its value is bound when the {@link QueryTemplate compiled query} is executed.
+ *
+ * <pre>
+ * Query query = new Query().from(Customer.class, "c");
+ * query.where().eq("c.status", param("status"));
+ * QueryTemplate template = query.compile();
+ * </pre>
+ *
+ * @see QueryTemplate
+ *
+ * @author Luciano Witt
+ *
+ */
+public class Parameter {
+
+	private String name;
+
+	protected Parameter(String name) {
+		if (name == null || name.isEmpty()) {
+			throw new RuntimeException("Parameter name is mandatory");
+		}
+		this.name = name;
+	}
+
+	/**
+	 * Creates a placeholder for the parameter with the given name.
+	 *
+	 * @param name
+	 * @return {@link Parameter}
+	 */
+	public static Parameter param(String name) {
+		return new Parameter(name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the value bound to this parameter on the current execution.
+	 *
+	 * @return the bound value
+	 */
+	protected Object getValue() {
+		return ExecutionContext.getParameter(name);
+	}
+
+	@Override
+	public String toString() {
+		return ":" + name;
+	}
+}
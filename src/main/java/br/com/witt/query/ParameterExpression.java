@@ -0,0 +1,83 @@
+package br.com.witt.query;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.engine.spi.TypedValue;
+
+/**
+ * Criterion comparing a property with the value bound to a {@link Parameter}.
+ * The value is only read when the query is executed, so the same criterion can
+ * be shared by every execution of a {@link QueryTemplate}. A null value is
+ * compared as a literal null, as {@code Restrictions.eq(property, null)} does,
+ * so comparisons with it match no rows, except for like, which ignores the
+ * condition, as {@link Where#like(String, String)} does for a null value.
+ *
+ * @author Luciano Witt
+ *
+ */
+class ParameterExpression implements Criterion {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String LIKE = "like";
+
+	private String property;
+	private String op;
+	private Parameter parameter;
+
+	ParameterExpression(String property, String op, Parameter parameter) {
+		this.property = property;
+		this.op = op;
+		this.parameter = parameter;
+	}
+
+	@Override
+	public String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		String[] columns = criteriaQuery.findColumns(property, criteria);
+		Object value = parameter.getValue();
+
+		if (LIKE.equals(op)) {
+			if (value == null) {
+				return "1=1";
+			}
+			return "lower(" + columns[0] + ") like ?";
+		}
+
+		StringBuilder sql = new StringBuilder();
+		if (columns.length > 1) {
+			sql.append('(');
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sql.append(" and ");
+			}
+			sql.append(columns[i]).append(op).append('?');
+		}
+		if (columns.length > 1) {
+			sql.append(')');
+		}
+		return sql.toString();
+	}
+
+	@Override
+	public TypedValue[] getTypedValues(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		Object value = parameter.getValue();
+
+		if (LIKE.equals(op)) {
+			if (value == null) {
+				return new TypedValue[0];
+			}
+			String pattern = MatchMode.ANYWHERE.toMatchString(value.toString()).toLowerCase();
+			return new TypedValue[] { criteriaQuery.getTypedValue(criteria, property, pattern) };
+		}
+		return new TypedValue[] { criteriaQuery.getTypedValue(criteria, property, value) };
+	}
+
+	@Override
+	public String toString() {
+		return property + (LIKE.equals(op) ? " " + op + " " : op) + parameter;
+	}
+}
@@ -1,12 +1,16 @@
 package br.com.witt.query;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.hibernate.Criteria;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.criterion.DetachedCriteria;
-import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Order;
 import org.hibernate.sql.JoinType;
 
 /**
@@ -28,6 +32,17 @@ public class Query {
 	private String fromAlias;
 	private List<Join> joins;
 	private Where where;
+	private OrderBy orderBy;
+	private Keyset keyset;
+	private Hints hints;
+	private Map<String, FetchStrategy> fetches;
+	private ResultCache resultCache;
+	private boolean cacheable;
+	private String cacheRegion;
+	private boolean decorrelated;
+	private int materializeThreshold;
+	private int modifications;
+	private QueryTemplate template;
 
 	public Query() {
 		selection = new Select(this);
@@ -36,6 +51,15 @@ public class Query {
 		fromAlias = null;
 		joins = new ArrayList<Join>();
 		where = null;
+		orderBy = new OrderBy(this);
+		keyset = new Keyset(this);
+		hints = new Hints(this);
+		fetches = new LinkedHashMap<String, FetchStrategy>();
+		resultCache = null;
+		cacheable = false;
+		cacheRegion = null;
+		decorrelated = false;
+		materializeThreshold = 0;
 	}
 
 	/**
@@ -57,6 +81,7 @@ public class Query {
 	public Query from(Class<?> entityClass, String alias) {
 		this.fromClass = entityClass;
 		this.fromAlias = alias;
+		modified();
 		return this;
 	}
 
@@ -68,8 +93,9 @@ public class Query {
 	 * @return {@link Join}
 	 */
 	public Join join(String associationPath, String alias) {
-		Join join = new Join(associationPath, alias, JoinType.INNER_JOIN);
+		Join join = new Join(this, associationPath, alias, JoinType.INNER_JOIN);
 		joins.add(join);
+		modified();
 		return join;
 	}
 
@@ -81,8 +107,9 @@ public class Query {
 	 * @return {@link Join}
 	 */
 	public Join leftJoin(String associationPath, String alias) {
-		Join join = new Join(associationPath, alias, JoinType.LEFT_OUTER_JOIN);
+		Join join = new Join(this, associationPath, alias, JoinType.LEFT_OUTER_JOIN);
 		joins.add(join);
+		modified();
 		return join;
 	}
 
@@ -94,8 +121,9 @@ public class Query {
 	 * @return {@link Join}
 	 */
 	public Join rightJoin(String associationPath, String alias) {
-		Join join = new Join(associationPath, alias, JoinType.RIGHT_OUTER_JOIN);
+		Join join = new Join(this, associationPath, alias, JoinType.RIGHT_OUTER_JOIN);
 		joins.add(join);
+		modified();
 		return join;
 	}
 
@@ -107,8 +135,9 @@ public class Query {
 	 * @return {@link Join}
 	 */
 	public Join fullJoin(String associationPath, String alias) {
-		Join join = new Join(associationPath, alias, JoinType.FULL_JOIN);
+		Join join = new Join(this, associationPath, alias, JoinType.FULL_JOIN);
 		joins.add(join);
+		modified();
 		return join;
 	}
 
@@ -119,39 +148,334 @@ public class Query {
 	 */
 	public Where where() {
 		if (where == null) {
-			where = new Where(null);
+			where = new Where(this, null);
+			modified();
 		}
 		return where;
 	}
 
-	protected DetachedCriteria getCriteria() {
-		DetachedCriteria criteria = DetachedCriteria.forClass(fromClass, fromAlias);
-		if (!joins.isEmpty()) {
-			for (Join join : joins) {
-				join.apply(criteria);
+	/**
+	 * Gives access to the execution hints of the query.
+	 * 
+	 * @return {@link Hints}
+	 */
+	public Hints hints() {
+		return hints;
+	}
+
+	/**
+	 * Declares how the given association of the root entities is loaded, so the
+	 * root entities and their associations are loaded by a fixed number of
+	 * queries, instead of one query for each lazy association accessed. It has no
+	 * effect on queries with projections.
+	 * 
+	 * @param associationPath the association path, from the root entity
+	 * @param strategy the {@link FetchStrategy fetch strategy}
+	 * @return {@link Query}
+	 */
+	public Query fetch(String associationPath, FetchStrategy strategy) {
+		fetches.put(associationPath, strategy);
+		modified();
+		return this;
+	}
+
+	/**
+	 * Keeps the results of {@link #list(Session)} and
+	 * {@link #uniqueResult(Session)} on the given in-process cache, so the same
+	 * query, with the same values, is executed only once until an entity it
+	 * reads changes. Queries for root entities cache only their primary keys: on
+	 * a hit, the entities already in the session or in the second level cache
+	 * are taken from there, and the other ones are loaded by their primary keys,
+	 * in a single query. The cache saves a round trip only for projections, or
+	 * when the entities are in the session or in the second level cache.
+	 * 
+	 * @param cache the result cache, or null to not cache
+	 * @return {@link Query}
+	 * @see ResultCache
+	 */
+	public Query cache(ResultCache cache) {
+		this.resultCache = cache;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Keeps the results of this query on Hibernate's query cache, which must be
+	 * enabled on the session factory.
+	 * 
+	 * @return {@link Query}
+	 */
+	public Query cacheable() {
+		return cacheable(null);
+	}
+
+	/**
+	 * Keeps the results of this query on the given region of Hibernate's query
+	 * cache, which must be enabled on the session factory.
+	 * 
+	 * @param region the cache region, or null for the default region
+	 * @return {@link Query}
+	 */
+	public Query cacheable(String region) {
+		this.cacheable = true;
+		this.cacheRegion = region;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Allows the EXISTS and NOT EXISTS conditions on this subquery to be
+	 * rewritten as uncorrelated IN and NOT IN conditions, that many databases
+	 * run as set-based semi-joins and anti-joins, instead of running the
+	 * subquery once for each row of the outer query.
+	 * <p>
+	 * The subquery is rewritten when its where is an equality between a property
+	 * of its own aliases and a property of an outer alias, combined by AND with
+	 * other conditions, and it has no aggregations. The rewritten subquery selects
+	 * the inner property, without its nulls, and a NOT EXISTS also keeps the outer
+	 * rows whose property is null, so the results are the same. An EXISTS under a
+	 * NOT is left as it is.
+	 * 
+	 * @return {@link Query}
+	 * @see Where#exists(Query)
+	 * @see Where#notExists(Query)
+	 */
+	public Query decorrelate() {
+		this.decorrelated = true;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Runs this subquery only once for each execution of the outer query, before
+	 * it, and binds its results to the conditions on it, as a list of values for
+	 * IN, NOT IN, EXISTS and NOT EXISTS, and as a single value for the comparisons
+	 * of properties. The same subquery used by many conditions, as in a where and
+	 * in the condition of a join, is run only once. Subqueries with more than
+	 * 1000 results are run inline.
+	 * <p>
+	 * A correlated subquery, that references the aliases of an outer query,
+	 * cannot run on its own, so it is found on compilation and run inline.
+	 * Comparisons of values with the subquery are run inline too.
+	 * 
+	 * @return {@link Query}
+	 * @see #materialize(int)
+	 */
+	public Query materialize() {
+		return materialize(1000);
+	}
+
+	/**
+	 * Runs this subquery only once for each execution of the outer query, as in
+	 * {@link #materialize()}, when it has up to the given number of results;
+	 * otherwise, it is run inline.
+	 * 
+	 * @param threshold the maximum number of results bound as literal values
+	 * @return {@link Query}
+	 */
+	public Query materialize(int threshold) {
+		if (threshold <= 0) {
+			throw new RuntimeException("Materialization threshold must be positive");
+		}
+		this.materializeThreshold = threshold;
+		modified();
+		return this;
+	}
+
+	/**
+	 * Gives access to the order by part of the SQL query.
+	 * 
+	 * @return {@link OrderBy}
+	 */
+	public OrderBy orderBy() {
+		return orderBy;
+	}
+
+	/**
+	 * Gives access to the sort key used by the keyset pagination.
+	 * 
+	 * @return {@link Keyset}
+	 * @see #getPage(Object[], int, Session)
+	 */
+	public Keyset keyset() {
+		return keyset;
+	}
+
+	/**
+	 * Compiles this query into an immutable {@link QueryTemplate template}, that
+	 * can be executed many times, with different {@link Parameter parameter}
+	 * values, without walking the query tree again. The template is kept, and
+	 * returned again, until this query or one of its subqueries is changed, so
+	 * the execution methods of the query only compile it once.
+	 * 
+	 * @return {@link QueryTemplate}
+	 */
+	public QueryTemplate compile() {
+		if (fromClass == null) {
+			throw new RuntimeException("Query has no root entity");
+		}
+		QueryTemplate template = this.template;
+		if (template == null || !template.isCurrent()) {
+			template = new QueryTemplate(this);
+			this.template = template;
+		}
+		return template;
+	}
+
+	/**
+	 * Records a change to this query, made by it or by one of its parts, so its
+	 * template is compiled again.
+	 */
+	protected void modified() {
+		modifications++;
+	}
+
+	protected int getModifications() {
+		return modifications;
+	}
+
+	protected Class<?> getFromClass() {
+		return fromClass;
+	}
+
+	protected String getFromAlias() {
+		return fromAlias;
+	}
+
+	protected List<Join> getJoins() {
+		return joins;
+	}
+
+	protected Where getWhere() {
+		return where;
+	}
+
+	protected OrderBy getOrderBy() {
+		return orderBy;
+	}
+
+	protected Keyset getKeyset() {
+		return keyset;
+	}
+
+	/**
+	 * Tells if any part of this query may reference the given alias. Used on
+	 * subqueries, to find the aliases of the outer query they correlate to.
+	 * 
+	 * @param alias
+	 * @return true if the alias may be referenced
+	 */
+	protected boolean references(String alias) {
+		if (selection.references(alias) || (where != null && where.references(alias))) {
+			return true;
+		}
+		for (Join join : joins) {
+			if (join.references(alias)) {
+				return true;
 			}
 		}
+		for (Order order : orderBy.getOrders()) {
+			if (Condition.references(order.getPropertyName(), alias)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected Hints getHints() {
+		return hints;
+	}
+
+	protected Map<String, FetchStrategy> getFetches() {
+		return fetches;
+	}
+
+	protected ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	protected boolean isCacheable() {
+		return cacheable;
+	}
+
+	protected String getCacheRegion() {
+		return cacheRegion;
+	}
+
+	protected boolean isDecorrelated() {
+		return decorrelated;
+	}
+
+	protected boolean isMaterialized() {
+		return materializeThreshold > 0;
+	}
+
+	protected int getMaterializeThreshold() {
+		return materializeThreshold;
+	}
+
+	/**
+	 * Appends the canonical description of this query to the given form.
+	 * 
+	 * @param form
+	 */
+	protected void describe(CanonicalForm form) {
+		form.append("select ");
+		selection.describe(form);
+		form.append(" from ").append(fromClass.getName()).append(" ").append(String.valueOf(fromAlias));
+		for (Join join : joins) {
+			form.append(" ");
+			join.describe(form);
+		}
 		if (where != null) {
-			criteria.add(where.getCriterion());
+			form.append(" where ");
+			where.describe(form);
+		}
+		if (!orderBy.getOrders().isEmpty()) {
+			form.append(" order by ").append(orderBy.getOrders().toString());
 		}
-		if (selection.hasProjection()) {
-			criteria.setProjection(selection.getProjection());
+		if (!keyset.isEmpty()) {
+			form.append(" keyset ").append(keyset.getProperties().toString()).append(keyset.getAscending().toString());
 		}
-		if (selection.getResultTransformer() != null) {
-			criteria.setResultTransformer(selection.getResultTransformer());
+		if (!fetches.isEmpty()) {
+			form.append(" fetch ").append(fetches.toString());
 		}
-		return criteria;
+		if (decorrelated) {
+			form.append(" decorrelated");
+		}
+		if (materializeThreshold > 0) {
+			form.append(" materialize(").append(String.valueOf(materializeThreshold)).append(")");
+		}
+	}
+
+	/**
+	 * Returns the canonical fingerprint of this query, with its current state.
+	 * The fingerprint separates the shape of the query from its literal values,
+	 * so the executions of queries with the same shape can be grouped. It is
+	 * the fingerprint of the {@link #compile() compiled} template, so it is only
+	 * computed again after the query is changed.
+	 * 
+	 * @return the {@link QueryFingerprint fingerprint}
+	 * @see QueryTemplate#getFingerprint()
+	 */
+	public QueryFingerprint fingerprint() {
+		return compile().getFingerprint();
+	}
+
+	protected DetachedCriteria getCriteria() {
+		return compile().createCriteria();
 	}
 
 	/**
 	 * Returns the executable criteria for this query on the given Hibernate
-	 * session.
+	 * session, with its orders and the associations fetched with
+	 * {@link FetchStrategy#JOIN}.
 	 * 
 	 * @param session the Hibernate session
 	 * @return {@link Criteria}
 	 */
 	public Criteria getCriteria(Session session) {
-		return getCriteria().getExecutableCriteria(session);
+		return compile().getCriteria(session);
 	}
 
 	/**
@@ -161,9 +485,7 @@ public class Query {
 	 * @return the number of rows returned by this query.
 	 */
 	public Long rowCount(Session session) {
-		Criteria criteria = getCriteria(session);
-		criteria.setProjection(Projections.rowCount());
-		return (Long) criteria.uniqueResult();
+		return compile().rowCount(session);
 	}
 
 	/**
@@ -172,9 +494,8 @@ public class Query {
 	 * @param session the Hibernate session
 	 * @return a unique result
 	 */
-	@SuppressWarnings("unchecked")
 	public <T> T uniqueResult(Session session) {
-		return (T) getCriteria(session).uniqueResult();
+		return compile().uniqueResult(session);
 	}
 
 	/**
@@ -183,9 +504,8 @@ public class Query {
 	 * @param session a Hibernate session
 	 * @return a result list
 	 */
-	@SuppressWarnings("unchecked")
 	public <T> List<T> list(Session session) {
-		return getCriteria(session).list();
+		return compile().list(session);
 	}
 
 	/**
@@ -198,20 +518,136 @@ public class Query {
 	 * @return the result list of the page
 	 */
 	public <T> List<T> getPage(int number, int size, Session session) {
-		if (number <= 0) {
-			number = 1;
-		}
-		if (size <= 0) {
-			size = 10;
-		}
+		return compile().getPage(number, size, session);
+	}
 
-		Criteria criteria = getCriteria(session);
-		criteria.setFirstResult((number - 1) * size);
-		criteria.setMaxResults(size);
+	/**
+	 * Executes the query on the given Hibernate session, returning a forward-only
+	 * cursor over its rows. The rows are fetched from the database in blocks of
+	 * the given fetch size, and the session is flushed and cleared once every
+	 * fetch size rows, detaching all of its entities. Prefer
+	 * {@link #scroll(StatelessSession, int)} when the rows are only
+	 * read.
+	 * 
+	 * @param session the Hibernate session
+	 * @param fetchSize the JDBC fetch size
+	 * @return {@link ResultCursor}
+	 */
+	public <T> ResultCursor<T> scroll(Session session, int fetchSize) {
+		return compile().scroll(session, fetchSize);
+	}
 
-		@SuppressWarnings("unchecked")
-		List<T> result = criteria.list();
+	/**
+	 * Executes the query on the given Hibernate session, returning a stream of its
+	 * rows, read from a {@link #scroll(Session, int) cursor}. The stream must be
+	 * closed after use.
+	 * 
+	 * @param session the Hibernate session
+	 * @param fetchSize the JDBC fetch size
+	 * @return a stream of rows
+	 */
+	public <T> Stream<T> stream(Session session, int fetchSize) {
+		return compile().stream(session, fetchSize);
+	}
 
-		return result;
+	/**
+	 * Executes the query on the given Hibernate session, reading its projections
+	 * into a {@link ColumnarResult columnar result}, with primitive arrays
+	 * instead of a boxed array for each row.
+	 * 
+	 * @param session the Hibernate session
+	 * @return {@link ColumnarResult}
+	 */
+	public ColumnarResult columnar(Session session) {
+		return compile().columnar(session);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning the page of
+	 * the given size that follows the given key, as defined by the
+	 * {@link #keyset() keyset}.
+	 * 
+	 * @param after the key of the last row of the previous page, or null for the
+	 *        first page
+	 * @param size the page size
+	 * @param session the Hibernate session
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(Object[] after, int size, Session session) {
+		return compile().getPage(after, size, session);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning a list of
+	 * rows, without a persistence context.
+	 * 
+	 * @param session the Hibernate stateless session
+	 * @return a result list
+	 * @see QueryTemplate#list(StatelessSession)
+	 */
+	public <T> List<T> list(StatelessSession session) {
+		return compile().list(session);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning the list of
+	 * rows of the given page number and page size.
+	 * 
+	 * @param number the page number
+	 * @param size the page size
+	 * @param session the Hibernate stateless session
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(int number, int size, StatelessSession session) {
+		return compile().getPage(number, size, session);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning the page of
+	 * the given size that follows the given key.
+	 * 
+	 * @param after the key of the last row of the previous page, or null for the
+	 *        first page
+	 * @param size the page size
+	 * @param session the Hibernate stateless session
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(Object[] after, int size, StatelessSession session) {
+		return compile().getPage(after, size, session);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning a forward-only
+	 * cursor over its rows.
+	 * 
+	 * @param session the Hibernate stateless session
+	 * @param fetchSize the JDBC fetch size
+	 * @return {@link ResultCursor}
+	 */
+	public <T> ResultCursor<T> scroll(StatelessSession session, int fetchSize) {
+		return compile().scroll(session, fetchSize);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning a stream of
+	 * its rows. The stream must be closed after use.
+	 * 
+	 * @param session the Hibernate stateless session
+	 * @param fetchSize the JDBC fetch size
+	 * @return a stream of rows
+	 */
+	public <T> Stream<T> stream(StatelessSession session, int fetchSize) {
+		return compile().stream(session, fetchSize);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, reading its projections
+	 * into a {@link ColumnarResult columnar result}.
+	 * 
+	 * @param session the Hibernate stateless session
+	 * @return {@link ColumnarResult}
+	 */
+	public ColumnarResult columnar(StatelessSession session) {
+		return compile().columnar(session);
 	}
 }
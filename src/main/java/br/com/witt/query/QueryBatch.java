@@ -0,0 +1,238 @@
+package br.com.witt.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * Batch of independent queries, as the lookups, counts and pages of a screen,
+ * executed together. Each request returns a future, completed when the batch is
+ * executed, and the batch returns all the results, in the order of the
+ * requests.
+ * <p>
+ * The batch can be executed on a single session, one request after the other,
+ * on the same connection and transaction, or in parallel, each request on its
+ * own session and on a thread of an executor, so the total time is the time
+ * of the slowest request instead of the sum of all of them.
+ *
+ * <pre>
+ * QueryBatch batch = new QueryBatch();
+ * CompletableFuture&lt;List&lt;City&gt;&gt; cities = batch.list(citiesQuery);
+ * CompletableFuture&lt;Long&gt; total = batch.rowCount(ordersQuery);
+ * CompletableFuture&lt;List&lt;Order&gt;&gt; page = batch.getPage(ordersQuery, 1, 20);
+ * batch.executeAsync(sessionFactory, executor).join();
+ * </pre>
+ *
+ * @author Luciano Witt
+ *
+ */
+public class QueryBatch {
+
+	private static final Map<String, Object> NO_PARAMETERS = Collections.emptyMap();
+
+	private List<Request<?>> requests;
+	private boolean executed;
+
+	public QueryBatch() {
+		requests = new ArrayList<Request<?>>();
+		executed = false;
+	}
+
+	/**
+	 * Adds a list of the rows of the given query.
+	 *
+	 * @param query
+	 * @return the future list of rows
+	 */
+	public <T> CompletableFuture<List<T>> list(Query query) {
+		return list(query, NO_PARAMETERS);
+	}
+
+	/**
+	 * Adds a list of the rows of the given query, with the given parameter values.
+	 *
+	 * @param query
+	 * @param parameters the parameter values, by name
+	 * @return the future list of rows
+	 */
+	public <T> CompletableFuture<List<T>> list(Query query, final Map<String, Object> parameters) {
+		final QueryTemplate template = query.compile();
+		return add(session -> template.<T>list(session, parameters));
+	}
+
+	/**
+	 * Adds a single row of the given query.
+	 *
+	 * @param query
+	 * @return the future row
+	 */
+	public <T> CompletableFuture<T> uniqueResult(Query query) {
+		return uniqueResult(query, NO_PARAMETERS);
+	}
+
+	/**
+	 * Adds a single row of the given query, with the given parameter values.
+	 *
+	 * @param query
+	 * @param parameters the parameter values, by name
+	 * @return the future row
+	 */
+	public <T> CompletableFuture<T> uniqueResult(Query query, final Map<String, Object> parameters) {
+		final QueryTemplate template = query.compile();
+		return add(session -> template.<T>uniqueResult(session, parameters));
+	}
+
+	/**
+	 * Adds a row count of the given query.
+	 *
+	 * @param query
+	 * @return the future number of rows
+	 */
+	public CompletableFuture<Long> rowCount(Query query) {
+		return rowCount(query, NO_PARAMETERS);
+	}
+
+	/**
+	 * Adds a row count of the given query, with the given parameter values.
+	 *
+	 * @param query
+	 * @param parameters the parameter values, by name
+	 * @return the future number of rows
+	 */
+	public CompletableFuture<Long> rowCount(Query query, final Map<String, Object> parameters) {
+		final QueryTemplate template = query.compile();
+		return add(session -> template.rowCount(session, parameters));
+	}
+
+	/**
+	 * Adds the page of the given number and size of the given query.
+	 *
+	 * @param query
+	 * @param number the page number
+	 * @param size the page size
+	 * @return the future rows of the page
+	 */
+	public <T> CompletableFuture<List<T>> getPage(Query query, int number, int size) {
+		return getPage(query, number, size, NO_PARAMETERS);
+	}
+
+	/**
+	 * Adds the page of the given number and size of the given query, with the
+	 * given parameter values.
+	 *
+	 * @param query
+	 * @param number the page number
+	 * @param size the page size
+	 * @param parameters the parameter values, by name
+	 * @return the future rows of the page
+	 */
+	public <T> CompletableFuture<List<T>> getPage(Query query, final int number, final int size,
+			final Map<String, Object> parameters) {
+		final QueryTemplate template = query.compile();
+		return add(session -> template.<T>getPage(number, size, session, parameters));
+	}
+
+	private <T> CompletableFuture<T> add(Function<Session, T> execution) {
+		if (executed) {
+			throw new RuntimeException("Batch already executed");
+		}
+		Request<T> request = new Request<T>(execution);
+		requests.add(request);
+		return request.result;
+	}
+
+	public int size() {
+		return requests.size();
+	}
+
+	/**
+	 * Executes the requests on the given session, one after the other. When a
+	 * request fails, the following ones are not executed, and their futures fail
+	 * too.
+	 *
+	 * @param session the Hibernate session
+	 * @return the results, in the order of the requests
+	 */
+	public List<Object> execute(Session session) {
+		start();
+		List<Object> results = new ArrayList<Object>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			try {
+				results.add(requests.get(i).execute(session));
+			} catch (RuntimeException e) {
+				for (int j = i + 1; j < requests.size(); j++) {
+					requests.get(j).result.completeExceptionally(e);
+				}
+				throw e;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Executes the requests in parallel, each one on its own session, opened from
+	 * the given session factory, and on a thread of the given executor. A failed
+	 * request does not stop the others, but the returned future fails.
+	 *
+	 * @param sessionFactory the Hibernate session factory
+	 * @param executor the executor of the requests
+	 * @return the future results, in the order of the requests
+	 */
+	public CompletableFuture<List<Object>> executeAsync(final SessionFactory sessionFactory, Executor executor) {
+		start();
+		final List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>(requests.size());
+		for (final Request<?> request : requests) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				Session session = sessionFactory.openSession();
+				try {
+					return request.execute(session);
+				} finally {
+					session.close();
+				}
+			}, executor));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(done -> {
+			List<Object> results = new ArrayList<Object>(futures.size());
+			for (CompletableFuture<?> future : futures) {
+				results.add(future.join());
+			}
+			return Collections.unmodifiableList(results);
+		});
+	}
+
+	private void start() {
+		if (executed) {
+			throw new RuntimeException("Batch already executed");
+		}
+		executed = true;
+	}
+
+	private static class Request<T> {
+
+		private Function<Session, T> execution;
+		private CompletableFuture<T> result;
+
+		Request(Function<Session, T> execution) {
+			this.execution = execution;
+			this.result = new CompletableFuture<T>();
+		}
+
+		T execute(Session session) {
+			try {
+				T value = execution.apply(session);
+				result.complete(value);
+				return value;
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package br.com.witt.query;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one execution of a query, reported to the
+ * {@link QueryInstrumentation installed instrumentation}: the fingerprint of
+ * the query, the time taken by each phase, and the number of rows returned.
+ * <p>
+ * The build phase creates the criteria of the query. The execution phase runs
+ * the SQL through Hibernate, which hydrates the rows while reading them, so
+ * both are measured together. The fetch phase runs the queries that follow the
+ * main one, as the {@link FetchStrategy fetches} of associations, or, for a
+ * {@link ResultCursor cursor}, reads its rows, until it is closed.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class QueryExecution {
+
+	private String operation;
+	private QueryFingerprint fingerprint;
+	private long buildNanos;
+	private long executionNanos;
+	private long fetchNanos;
+	private int rows;
+	private boolean failed;
+
+	public QueryExecution(String operation, QueryFingerprint fingerprint, long buildNanos, long executionNanos,
+			long fetchNanos, int rows, boolean failed) {
+		this.operation = operation;
+		this.fingerprint = fingerprint;
+		this.buildNanos = buildNanos;
+		this.executionNanos = executionNanos;
+		this.fetchNanos = fetchNanos;
+		this.rows = rows;
+		this.failed = failed;
+	}
+
+	/**
+	 * Returns the executed operation, as "list", "uniqueResult", "rowCount",
+	 * "getPage", "scroll", "columnar" or "pagination".
+	 *
+	 * @return the operation
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	public QueryFingerprint getFingerprint() {
+		return fingerprint;
+	}
+
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	public long getExecutionNanos() {
+		return executionNanos;
+	}
+
+	public long getFetchNanos() {
+		return fetchNanos;
+	}
+
+	public long getTotalNanos() {
+		return buildNanos + executionNanos + fetchNanos;
+	}
+
+	/**
+	 * Returns the number of rows returned, or, for a row count, the number of rows
+	 * counted.
+	 *
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Tells if the execution ended with an exception.
+	 *
+	 * @return true if the execution failed
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public String toString() {
+		return operation + " " + millis(getTotalNanos()) + " ms (build " + millis(buildNanos) + ", execution "
+				+ millis(executionNanos) + ", fetch " + millis(fetchNanos) + "), "
+				+ (failed ? "failed" : rows + " rows") + ": " + fingerprint.getShape();
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+}
@@ -0,0 +1,103 @@
+package br.com.witt.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Canonical fingerprint of a {@link Query}. The shape describes the structure
+ * of the query: the root entity, the joins and their types, the properties and
+ * operators of the where conditions, the subqueries, the selected projections
+ * and the orders. The literal values of the conditions are replaced in the
+ * shape by placeholders and kept apart, in order.
+ * <p>
+ * Queries that differ only by their literal values have the same
+ * {@link #getShape() shape} and {@link #getShapeHash() shape hash}, so the
+ * shape groups the executions of a query, while the whole fingerprint, shape
+ * and values, identifies one query. {@link Parameter Placeholders} are part of
+ * the shape, by name.
+ *
+ * @see Query#fingerprint()
+ * @see QueryTemplate#getFingerprint()
+ *
+ * @author Luciano Witt
+ *
+ */
+public final class QueryFingerprint {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final String shape;
+	private final long shapeHash;
+	private final List<Object> values;
+
+	QueryFingerprint(CanonicalForm form) {
+		shape = form.getShape();
+		shapeHash = hash(shape);
+		values = Collections.unmodifiableList(form.getValues());
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the shape, stable across executions of the JVM.
+	 */
+	private static long hash(String shape) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < shape.length(); i++) {
+			char c = shape.charAt(i);
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the shape of the query, with placeholders in the place of the
+	 * literal values.
+	 *
+	 * @return the shape
+	 */
+	public String getShape() {
+		return shape;
+	}
+
+	/**
+	 * Returns a 64-bit hash of the shape, stable across executions of the JVM.
+	 *
+	 * @return the shape hash
+	 */
+	public long getShapeHash() {
+		return shapeHash;
+	}
+
+	/**
+	 * Returns the literal values of the query, in the order of their placeholders
+	 * in the shape.
+	 *
+	 * @return the values
+	 */
+	public List<Object> getValues() {
+		return values;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (int) (shapeHash ^ (shapeHash >>> 32)) + values.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof QueryFingerprint)) {
+			return false;
+		}
+		QueryFingerprint other = (QueryFingerprint) obj;
+		return shapeHash == other.shapeHash && shape.equals(other.shape) && values.equals(other.values);
+	}
+
+	@Override
+	public String toString() {
+		return shape + " " + values;
+	}
+}
@@ -0,0 +1,74 @@
+package br.com.witt.query;
+
+/**
+ * Receives the {@link QueryExecution metrics} of the executions of the queries:
+ * list, uniqueResult, rowCount, getPage and the paginated searches. One
+ * instrumentation is installed for the whole application; by default it is
+ * {@link #NONE}, and the executions are not even timed.
+ * <p>
+ * The instrumentation is called on the thread that executed the query, right
+ * after it, so it must be fast and thread safe.
+ *
+ * @see LatencyRecorder
+ * @see SlowQueryLog
+ *
+ * @author Luciano Witt
+ *
+ */
+public interface QueryInstrumentation {
+
+	/**
+	 * Instrumentation that ignores the executions.
+	 */
+	QueryInstrumentation NONE = execution -> {
+	};
+
+	/**
+	 * Receives the metrics of an execution.
+	 *
+	 * @param execution
+	 */
+	void executed(QueryExecution execution);
+
+	/**
+	 * Installs the given instrumentation, replacing the current one.
+	 *
+	 * @param instrumentation the instrumentation, or null for {@link #NONE}
+	 */
+	static void install(QueryInstrumentation instrumentation) {
+		QueryTimer.install(instrumentation == null ? NONE : instrumentation);
+	}
+
+	/**
+	 * Returns the installed instrumentation.
+	 *
+	 * @return {@link QueryInstrumentation}
+	 */
+	static QueryInstrumentation installed() {
+		return QueryTimer.installed();
+	}
+
+	/**
+	 * Tells if an instrumentation other than {@link #NONE} is installed.
+	 *
+	 * @return true if the executions are instrumented
+	 */
+	static boolean isEnabled() {
+		return QueryTimer.installed() != NONE;
+	}
+
+	/**
+	 * Combines the given instrumentations into one, that reports each execution
+	 * to all of them, in order.
+	 *
+	 * @param instrumentations
+	 * @return {@link QueryInstrumentation}
+	 */
+	static QueryInstrumentation all(final QueryInstrumentation... instrumentations) {
+		return execution -> {
+			for (QueryInstrumentation instrumentation : instrumentations) {
+				instrumentation.executed(execution);
+			}
+		};
+	}
+}
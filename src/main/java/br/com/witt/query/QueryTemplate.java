@@ -0,0 +1,1684 @@
+package br.com.witt.query;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.hibernate.Cache;
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.HibernateException;
+import org.hibernate.NullPrecedence;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projection;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.sql.JoinType;
+import org.hibernate.transform.ResultTransformer;
+import org.hibernate.tuple.entity.EntityMetamodel;
+
+/**
+ * Compiled form of a {@link Query}. The query tree is walked only once, when
+ * the template is created, and the resulting criteria are reused on every
+ * execution. Values that change between executions are declared with
+ * {@link Parameter#param(String) placeholders} and bound when the template is
+ * executed.
+ * <p>
+ * A template is immutable: later changes to the query it was compiled from are
+ * not reflected on it. It is safe to execute the same template concurrently on
+ * different sessions.
+ *
+ * @see Query#compile()
+ * @see Parameter
+ *
+ * @author Luciano Witt
+ *
+ */
+public class QueryTemplate {
+
+	private static final Map<String, Object> NO_PARAMETERS = Collections.emptyMap();
+
+	private final Query query;
+	private final Class<?> fromClass;
+	private final String fromAlias;
+	private final List<Join> joins;
+	private final List<Criterion> joinCriteria;
+	private final List<Boolean> joinsReferenced;
+	private final List<Boolean> joinsUsed;
+	private volatile List<Boolean> joinsApplied;
+	private final Criterion criterion;
+	private final boolean empty;
+	private final Projection projection;
+	private final List<String> columnNames;
+	private final ResultTransformer resultTransformer;
+	private final List<Order> orders;
+	private final List<String> keyProperties;
+	private final List<Boolean> keyAscending;
+	private final Map<String, FetchStrategy> fetches;
+	private final Hints hints;
+	private volatile CanonicalForm form;
+	private volatile QueryFingerprint fingerprint;
+	private final ResultCache resultCache;
+	private final boolean cacheable;
+	private final String cacheRegion;
+	private final int modifications;
+	private final int[] subqueryModifications;
+	private final Set<Query> correlatedSubqueries;
+
+	protected QueryTemplate(Query query) {
+		this.query = query;
+		fromClass = query.getFromClass();
+		fromAlias = query.getFromAlias();
+		joins = new ArrayList<Join>(query.getJoins());
+		joinCriteria = new ArrayList<Criterion>(joins.size());
+		for (Join join : joins) {
+			joinCriteria.add(join.getCriterion());
+		}
+		Condition condition = (query.getWhere() == null ? null : query.getWhere().optimize(false));
+		criterion = (condition == null || condition == ConstantCondition.TRUE ? null : condition.getCriterion());
+		empty = (condition == ConstantCondition.FALSE && !query.select().hasUngroupedAggregate());
+		projection = (query.select().hasProjection() ? query.select().getProjection() : null);
+		columnNames = new ArrayList<String>(query.select().getAliases());
+		resultTransformer = query.select().getResultTransformer();
+		orders = new ArrayList<Order>(query.getOrderBy().getOrders());
+		keyProperties = new ArrayList<String>(query.getKeyset().getProperties());
+		keyAscending = new ArrayList<Boolean>(query.getKeyset().getAscending());
+		fetches = new LinkedHashMap<String, FetchStrategy>(query.getFetches());
+		hints = new Hints(query.getHints());
+		joinsReferenced = findReferencedJoins(query, false);
+		joinsUsed = findReferencedJoins(query, true);
+		resultCache = query.getResultCache();
+		cacheable = query.isCacheable();
+		cacheRegion = query.getCacheRegion();
+		modifications = query.getModifications();
+		List<Query> subqueries = getForm().getSubqueries();
+		subqueryModifications = new int[subqueries.size()];
+		for (int i = 0; i < subqueryModifications.length; i++) {
+			subqueryModifications[i] = subqueries.get(i).getModifications();
+		}
+		correlatedSubqueries = findCorrelatedSubqueries();
+	}
+
+	/**
+	 * Finds the materialized subqueries that reference the aliases of an outer
+	 * query, this one or a subquery they are nested in. They cannot run on
+	 * their own, so they are run inline.
+	 */
+	private Set<Query> findCorrelatedSubqueries() {
+		Set<Query> correlated = new HashSet<Query>();
+		List<Query> subqueries = getForm().getSubqueries();
+		for (int i = 0; i < subqueries.size(); i++) {
+			Query subquery = subqueries.get(i);
+			if (!subquery.isMaterialized()) {
+				continue;
+			}
+			Set<String> aliases = new HashSet<String>();
+			addAliases(query, aliases);
+			for (Query enclosing : getForm().getEnclosingQueries(i)) {
+				addAliases(enclosing, aliases);
+			}
+			Set<String> own = new HashSet<String>();
+			addAliases(subquery, own);
+			aliases.removeAll(own);
+			for (String alias : aliases) {
+				if (subquery.references(alias)) {
+					correlated.add(subquery);
+					break;
+				}
+			}
+		}
+		return correlated;
+	}
+
+	private static void addAliases(Query query, Set<String> aliases) {
+		if (query.getFromAlias() != null) {
+			aliases.add(query.getFromAlias());
+		}
+		for (Join join : query.getJoins()) {
+			aliases.add(join.getAlias());
+		}
+	}
+
+	/**
+	 * Tells if neither the query this template was compiled from nor its
+	 * subqueries were changed since then.
+	 */
+	protected boolean isCurrent() {
+		if (query.getModifications() != modifications) {
+			return false;
+		}
+		List<Query> subqueries = getForm().getSubqueries();
+		for (int i = 0; i < subqueryModifications.length; i++) {
+			if (subqueries.get(i).getModifications() != subqueryModifications[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the joins that can change the rows counted by the query: the joins
+	 * that are neither left outer joins nor optional, the joins referenced by the
+	 * where or the select, and, when ordered, by the orders and the keyset, and
+	 * the joins these ones depend on.
+	 */
+	private List<Boolean> findReferencedJoins(Query query, boolean ordered) {
+		Boolean[] referenced = new Boolean[joins.size()];
+		for (int i = 0; i < referenced.length; i++) {
+			Join join = joins.get(i);
+			referenced[i] = (join.getType() != JoinType.LEFT_OUTER_JOIN && !join.isOptional())
+					|| query.select().references(join.getAlias())
+					|| (query.getWhere() != null && query.getWhere().references(join.getAlias()))
+					|| (ordered && isOrderedByAlias(join.getAlias()));
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < referenced.length; i++) {
+				for (int j = 0; j < referenced.length; j++) {
+					if (referenced[i] && !referenced[j] && joins.get(i).references(joins.get(j).getAlias())) {
+						referenced[j] = true;
+						changed = true;
+					}
+				}
+			}
+		}
+		return Arrays.asList(referenced);
+	}
+
+	/**
+	 * Tells if the orders or the keyset reference the given alias.
+	 */
+	private boolean isOrderedByAlias(String alias) {
+		for (Order order : orders) {
+			if (Condition.references(order.getPropertyName(), alias)) {
+				return true;
+			}
+		}
+		for (String property : keyProperties) {
+			if (Condition.references(property, alias)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the joins applied on the execution of the query: the used joins, and
+	 * the unused joins that may change the rows, that is, the joins that are
+	 * neither optional nor left joins to a single entity.
+	 */
+	private List<Boolean> getJoinsApplied(SessionFactory factory) {
+		List<Boolean> joinsApplied = this.joinsApplied;
+		if (joinsApplied == null) {
+			JoinGraph graph = new JoinGraph(fromClass, fromAlias, joins, factory);
+			Boolean[] applied = new Boolean[joins.size()];
+			for (int i = 0; i < applied.length; i++) {
+				Join join = joins.get(i);
+				applied[i] = joinsUsed.get(i) || (!join.isOptional() && !graph.isToOne(join));
+			}
+			joinsApplied = Arrays.asList(applied);
+			this.joinsApplied = joinsApplied;
+		}
+		return joinsApplied;
+	}
+
+	/**
+	 * Creates the criteria of the query, with its orders and join fetches,
+	 * without the unused optional joins. The associations fetched after the
+	 * query, by subselects or batches, are only fetched by the execution methods.
+	 */
+	protected DetachedCriteria createCriteria() {
+		DetachedCriteria criteria = createSubqueryCriteria();
+		addOrders(criteria, orders);
+		if (projection == null) {
+			for (Map.Entry<String, FetchStrategy> fetch : fetches.entrySet()) {
+				if (fetch.getValue().isJoin()) {
+					criteria.setFetchMode(fetch.getKey(), FetchMode.JOIN);
+				}
+			}
+		}
+		return criteria;
+	}
+
+	/**
+	 * Creates the criteria of the query as a subquery, without orders, fetches
+	 * and unused optional joins, as subqueries are created without a session.
+	 */
+	protected DetachedCriteria createSubqueryCriteria() {
+		return createCriteria(DetachedCriteria.forClass(fromClass, fromAlias), joinsUsed, true);
+	}
+
+	/**
+	 * Creates the criteria of the query for an execution on the given session,
+	 * without the joins that can not change its rows.
+	 */
+	private DetachedCriteria createCriteria(SharedSessionContract session) {
+		return createCriteria(newCriteria(session), getJoinsApplied(getFactory(session)), false);
+	}
+
+	private DetachedCriteria createCriteria(DetachedCriteria criteria, List<Boolean> used, boolean keepRequired) {
+		for (int i = 0; i < joins.size(); i++) {
+			if (used.get(i) || (keepRequired && !joins.get(i).isOptional())) {
+				joins.get(i).apply(criteria, joinCriteria.get(i));
+			}
+		}
+		if (criterion != null) {
+			criteria.add(criterion);
+		}
+		if (projection != null) {
+			criteria.setProjection(projection);
+		}
+		if (resultTransformer != null) {
+			criteria.setResultTransformer(resultTransformer);
+		}
+		return criteria;
+	}
+
+	/**
+	 * Creates the criteria for the row count of the query. Left joins that are
+	 * not referenced are dropped when they can not multiply the rows: always for
+	 * distinct root entities, that are counted by their distinct primary keys,
+	 * and only for to-one associations otherwise. Optional joins that are not
+	 * referenced are always dropped.
+	 * <p>
+	 * A limited count selects the counted rows themselves, instead of their
+	 * count, so the database can stop after the limit.
+	 */
+	private DetachedCriteria createCountCriteria(Session session, boolean limited) {
+		DetachedCriteria criteria = DetachedCriteria.forClass(fromClass, fromAlias);
+		JoinGraph graph = new JoinGraph(fromClass, fromAlias, joins, session.getSessionFactory());
+		boolean joined = false;
+		for (int i = 0; i < joins.size(); i++) {
+			Join join = joins.get(i);
+			if (joinsReferenced.get(i) || (!join.isOptional() && projection != null && !graph.isToOne(join))) {
+				join.apply(criteria, joinCriteria.get(i));
+				joined = true;
+			}
+		}
+		if (criterion != null) {
+			criteria.add(criterion);
+		}
+
+		String id = getIdProperty(session);
+		if (limited) {
+			if (projection != null) {
+				criteria.setProjection(projection);
+			} else if (joined && id != null) {
+				criteria.setProjection(Projections.distinct(Projections.property(id)));
+			} else {
+				criteria.setProjection(Projections.id());
+			}
+		} else if (joined && projection == null && id != null) {
+			criteria.setProjection(Projections.countDistinct(id));
+		} else {
+			criteria.setProjection(Projections.rowCount());
+		}
+		return criteria;
+	}
+
+	/**
+	 * Returns the executable criteria for this query on the given session, with
+	 * its orders, join fetches and execution hints.
+	 */
+	protected Criteria getCriteria(Session session) {
+		return getExecutableCriteria(createCriteria(), session);
+	}
+
+	/**
+	 * Creates empty criteria for the root entity, to be executed on the given
+	 * session, either stateful or stateless.
+	 */
+	private DetachedCriteria newCriteria(SharedSessionContract session) {
+		if (session instanceof StatelessSession) {
+			return new StatelessCriteria(fromClass, fromAlias, (StatelessSession) session);
+		}
+		return DetachedCriteria.forClass(fromClass, fromAlias);
+	}
+
+	private static SessionFactory getFactory(SharedSessionContract session) {
+		return ((SessionImplementor) session).getFactory();
+	}
+
+	/**
+	 * Returns the executable criteria on the given session, with the execution
+	 * hints, and on Hibernate's query cache when the query is cacheable.
+	 */
+	private Criteria getExecutableCriteria(DetachedCriteria detachedCriteria, SharedSessionContract session) {
+		Criteria criteria;
+		if (detachedCriteria instanceof StatelessCriteria) {
+			criteria = ((StatelessCriteria) detachedCriteria).getExecutableCriteria();
+		} else {
+			criteria = detachedCriteria.getExecutableCriteria((Session) session);
+		}
+		hints.apply(criteria, session instanceof Session);
+		if (cacheable) {
+			criteria.setCacheable(true);
+			if (cacheRegion != null) {
+				criteria.setCacheRegion(cacheRegion);
+			}
+		}
+		return criteria;
+	}
+
+	private List<Order> getOrders(SharedSessionContract session, boolean tiebreaker) {
+		if (!tiebreaker || projection != null) {
+			return orders;
+		}
+		String id = getIdProperty(session);
+		if (id == null || isOrderedBy(id)) {
+			return orders;
+		}
+		List<Order> result = new ArrayList<Order>(orders);
+		result.add(Order.asc(id));
+		return result;
+	}
+
+	private void addOrders(DetachedCriteria criteria, List<Order> orders) {
+		for (Order order : orders) {
+			criteria.addOrder(order);
+		}
+	}
+
+	private boolean isOrderedBy(String property) {
+		for (Order order : orders) {
+			if (getRootProperty(order.getPropertyName()).equals(getRootProperty(property))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String getRootProperty(String property) {
+		if (fromAlias != null && property.startsWith(fromAlias + ".")) {
+			return property.substring(fromAlias.length() + 1);
+		}
+		return property;
+	}
+
+	private boolean isRootProperty(String property) {
+		return property.indexOf('.') < 0 || (fromAlias != null && property.startsWith(fromAlias + "."));
+	}
+
+	private String getIdProperty(SharedSessionContract session) {
+		String id = getFactory(session).getClassMetadata(fromClass).getIdentifierPropertyName();
+		if (id == null) {
+			return null;
+		}
+		return (fromAlias == null ? id : fromAlias + "." + id);
+	}
+
+	/**
+	 * Tells if the query returns distinct root entities and has joins that may
+	 * multiply its rows. In this case the distinct root entities are selected by
+	 * the database, through their primary keys, instead of transferring every
+	 * joined row and removing the duplicates in memory.
+	 */
+	private boolean isJoinedRootEntity(SharedSessionContract session) {
+		return projection == null && resultTransformer == Criteria.DISTINCT_ROOT_ENTITY
+				&& getJoinsApplied(getFactory(session)).contains(Boolean.TRUE) && getIdProperty(session) != null;
+	}
+
+	/**
+	 * Sets the join fetch mode of the associations fetched with
+	 * {@link FetchStrategy#JOIN}. In page queries, the collections are not join
+	 * fetched, as their rows would be counted by the page limits.
+	 */
+	private void addJoinFetches(Criteria criteria, SharedSessionContract session, boolean paged) {
+		if (projection != null) {
+			return;
+		}
+		for (Map.Entry<String, FetchStrategy> fetch : fetches.entrySet()) {
+			if (fetch.getValue().isJoin() && (!paged || !isCollection(fetch.getKey(), session))) {
+				criteria.setFetchMode(fetch.getKey(), FetchMode.JOIN);
+			}
+		}
+	}
+
+	/**
+	 * Opens the context of an execution of this query, and runs its
+	 * {@link Query#materialize() materialized} subqueries, so their results are
+	 * bound to the context before the query runs.
+	 */
+	private ExecutionContext openContext(Map<String, Object> parameters, SharedSessionContract session) {
+		ExecutionContext context = ExecutionContext.open(parameters);
+		try {
+			materializeSubqueries(context, session);
+		} catch (RuntimeException e) {
+			context.close();
+			throw e;
+		}
+		return context;
+	}
+
+	private void materializeSubqueries(ExecutionContext context, SharedSessionContract session) {
+		for (Query subquery : getForm().getSubqueries()) {
+			if (subquery.isMaterialized() && !correlatedSubqueries.contains(subquery)
+					&& !context.isMaterialized(subquery)) {
+				context.materialize(subquery, subquery.compile().materialize(context, session));
+			}
+		}
+	}
+
+	/**
+	 * Runs this query as a materialized subquery, on the context of the outer
+	 * query, after its own materialized subqueries. Returns the selected values,
+	 * or null when there are more values than the threshold of the subquery.
+	 */
+	private List<Object> materialize(ExecutionContext context, SharedSessionContract session) {
+		if (empty) {
+			return new ArrayList<Object>();
+		}
+		materializeSubqueries(context, session);
+		int threshold = query.getMaterializeThreshold();
+		Criteria criteria = getExecutableCriteria(createCriteria(session), session);
+		criteria.setMaxResults(threshold + 1);
+		@SuppressWarnings("unchecked")
+		List<Object> values = criteria.list();
+		return (values.size() > threshold ? null : values);
+	}
+
+	/**
+	 * Loads, after the query, the associations of the given root entities fetched
+	 * with {@link FetchStrategy#SUBSELECT} or {@link FetchStrategy#batch(int)
+	 * BATCH}, and, in page queries, the collections fetched with
+	 * {@link FetchStrategy#JOIN}. Each association is loaded by join fetching it
+	 * on a query for the root entities by their primary keys, which initializes it
+	 * on the root entities already in the session.
+	 */
+	private <T> List<T> fetchAfter(List<T> roots, SharedSessionContract session, boolean paged) {
+		String id = getIdProperty(session);
+		if (projection != null || roots.isEmpty() || fetches.isEmpty() || id == null
+				|| !(session instanceof Session)) {
+			return roots;
+		}
+		ClassMetadata metadata = getFactory(session).getClassMetadata(fromClass);
+		List<Object> ids = new ArrayList<Object>(roots.size());
+		for (T root : roots) {
+			if (metadata.getMappedClass().isInstance(root)) {
+				ids.add(metadata.getIdentifier(root, (SessionImplementor) session));
+			}
+		}
+
+		for (Map.Entry<String, FetchStrategy> fetch : fetches.entrySet()) {
+			FetchStrategy strategy = fetch.getValue();
+			if (strategy.isJoin() && (!paged || !isCollection(fetch.getKey(), session))) {
+				continue;
+			}
+			int batchSize = (strategy.getBatchSize() > 0 ? strategy.getBatchSize() : ids.size());
+			for (int first = 0; first < ids.size(); first += batchSize) {
+				Object[] batch = ids.subList(first, Math.min(first + batchSize, ids.size())).toArray();
+				DetachedCriteria criteria = newCriteria(session).add(new InExpression(id, InExpression.IN, batch))
+						.setFetchMode(fetch.getKey(), FetchMode.JOIN);
+				getExecutableCriteria(criteria, session).list();
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * Tells if the given association path may reach a collection. Paths that can
+	 * not be resolved with the metadata, as nested paths, are taken as
+	 * collections.
+	 */
+	private boolean isCollection(String path, SharedSessionContract session) {
+		try {
+			return new JoinGraph(fromClass, fromAlias, joins, getFactory(session)).getPropertyType(path)
+					.isCollectionType();
+		} catch (HibernateException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Creates the criteria for all the distinct root entities of the query. When
+	 * possible, the joins are moved to a subquery that selects the primary keys of
+	 * the root entities, so the main query returns each root entity only once.
+	 */
+	private DetachedCriteria createRootCriteria(SharedSessionContract session) {
+		if (!isJoinedRootEntity(session)) {
+			return createCriteria(session);
+		}
+		for (Order order : orders) {
+			if (!isRootProperty(order.getPropertyName())) {
+				return createCriteria(session);
+			}
+		}
+
+		String id = getIdProperty(session);
+		DetachedCriteria ids = createCriteria(DetachedCriteria.forClass(fromClass, fromAlias),
+				getJoinsApplied(getFactory(session)), false);
+		ids.setProjection(Projections.property(id));
+
+		DetachedCriteria criteria = newCriteria(session);
+		criteria.add(Subqueries.propertyIn(id, ids));
+		return criteria;
+	}
+
+	/**
+	 * Lists a page of distinct root entities in two phases: first the distinct
+	 * primary keys of the page are selected, with the joins, orders and limits of
+	 * the query, and then only the root entities of these keys are loaded. The
+	 * orders on properties of joined entities, which can have many values for
+	 * each root entity, are applied to the least value for ascending orders, and
+	 * to the greatest value for descending orders, so each key is selected only
+	 * once.
+	 */
+	private <T> List<T> listRootsById(DetachedCriteria detachedCriteria, List<Order> pageOrders, int first, int max,
+			SharedSessionContract session) {
+		String id = getIdProperty(session);
+		boolean aggregated = false;
+		for (Order order : pageOrders) {
+			if (!isRootProperty(order.getPropertyName())) {
+				aggregated = true;
+			}
+		}
+
+		ProjectionList columns = Projections.projectionList();
+		if (!aggregated) {
+			columns.add(Projections.property(id));
+			for (Order order : pageOrders) {
+				if (!order.getPropertyName().equals(id)) {
+					columns.add(Projections.property(order.getPropertyName()));
+				}
+			}
+			detachedCriteria.setProjection(Projections.distinct(columns));
+			addOrders(detachedCriteria, pageOrders);
+		} else {
+			columns.add(Projections.groupProperty(id));
+			for (int i = 0; i < pageOrders.size(); i++) {
+				Order order = pageOrders.get(i);
+				String property = order.getPropertyName();
+				if (isRootProperty(property)) {
+					if (!property.equals(id)) {
+						columns.add(Projections.groupProperty(property));
+					}
+					detachedCriteria.addOrder(order);
+				} else {
+					String alias = "order" + i;
+					columns.add(order.isAscending() ? Projections.min(property) : Projections.max(property), alias);
+					Order aggregateOrder = order.isAscending() ? Order.asc(alias) : Order.desc(alias);
+					detachedCriteria.addOrder(order.isIgnoreCase() ? aggregateOrder.ignoreCase() : aggregateOrder);
+				}
+			}
+			detachedCriteria.setProjection(columns);
+		}
+
+		Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+		criteria.setFirstResult(first);
+		criteria.setMaxResults(max);
+
+		Set<Object> ids = new LinkedHashSet<Object>();
+		for (Object row : criteria.list()) {
+			ids.add(row instanceof Object[] ? ((Object[]) row)[0] : row);
+		}
+		if (ids.isEmpty()) {
+			return new ArrayList<T>();
+		}
+
+		return loadRootsById(ids, session);
+	}
+
+	/**
+	 * Loads the root entities of the given primary keys, in their order, with
+	 * the fetches of the query. The keys of entities that are not found are
+	 * skipped.
+	 */
+	private <T> List<T> loadRootsById(Collection<Object> ids, SharedSessionContract session) {
+		String id = getIdProperty(session);
+		Criteria rootCriteria = getExecutableCriteria(
+				newCriteria(session).add(new InExpression(id, InExpression.IN, ids.toArray())), session);
+		addJoinFetches(rootCriteria, session, false);
+		@SuppressWarnings("unchecked")
+		List<T> roots = rootCriteria.list();
+
+		ClassMetadata metadata = getFactory(session).getClassMetadata(fromClass);
+		Map<Object, T> rootsById = new HashMap<Object, T>();
+		for (T root : roots) {
+			rootsById.put(metadata.getIdentifier(root, (SessionImplementor) session), root);
+		}
+		List<T> result = new ArrayList<T>(ids.size());
+		for (Object key : ids) {
+			T root = rootsById.get(key);
+			if (root != null) {
+				result.add(root);
+			}
+		}
+		return fetchAfter(result, session, false);
+	}
+
+	private CanonicalForm getForm() {
+		CanonicalForm form = this.form;
+		if (form == null) {
+			form = new CanonicalForm();
+			query.describe(form);
+			this.form = form;
+		}
+		return form;
+	}
+
+	/**
+	 * Tells if this query is provably empty, so it is not executed: its where
+	 * conditions are never true, as an empty IN list, an always false SQL marker
+	 * such as "1=0", a property equal to two different values, or an EXISTS or IN
+	 * of an empty subquery. Queries that aggregate without a GROUP BY are never
+	 * empty, as they return a row even without matching rows.
+	 *
+	 * @return true if the query returns no rows
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Returns the canonical fingerprint of this query, computed when first
+	 * requested and reused after that.
+	 *
+	 * @return the {@link QueryFingerprint fingerprint}
+	 */
+	public QueryFingerprint getFingerprint() {
+		QueryFingerprint fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			fingerprint = new QueryFingerprint(getForm());
+			this.fingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Returns a key that identifies this query, for caches: two queries have equal
+	 * keys when they have the same {@link #getFingerprint() fingerprint}, that is,
+	 * the same root entity, joins, where conditions, selected projections and
+	 * orders, with equal literal values.
+	 *
+	 * @return the cache key
+	 */
+	public Object getCacheKey() {
+		return getCacheKey(NO_PARAMETERS);
+	}
+
+	/**
+	 * Returns a key that identifies this query, executed with the given parameter
+	 * values, for caches.
+	 *
+	 * @param parameters the parameter values, by name
+	 * @return the cache key
+	 * @see #getCacheKey()
+	 */
+	public Object getCacheKey(Map<String, Object> parameters) {
+		return Arrays.asList(getFingerprint(), copyParameters(parameters));
+	}
+
+	/**
+	 * Copies the parameter values into an unmodifiable map, with the collections
+	 * and arrays copied into unmodifiable lists, so a key does not change when
+	 * the caller changes its parameters after the execution.
+	 */
+	private static Map<String, Object> copyParameters(Map<String, Object> parameters) {
+		if (parameters.isEmpty()) {
+			return NO_PARAMETERS;
+		}
+		Map<String, Object> copy = new HashMap<String, Object>(parameters.size());
+		for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+			Object value = parameter.getValue();
+			if (value instanceof Collection) {
+				value = Collections.unmodifiableList(new ArrayList<Object>((Collection<?>) value));
+			} else if (value instanceof Object[]) {
+				value = Collections.unmodifiableList(new ArrayList<Object>(Arrays.asList((Object[]) value)));
+			}
+			copy.put(parameter.getKey(), value);
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+
+	/**
+	 * Returns the classes of the entities read by this query: the root entity, the
+	 * joined entities, and the entities read by the subqueries.
+	 *
+	 * @param factory the Hibernate session factory
+	 * @return the entity classes
+	 */
+	public Set<Class<?>> getEntityClasses(SessionFactory factory) {
+		Set<Class<?>> classes = new JoinGraph(fromClass, fromAlias, joins, factory).getEntityClasses();
+		for (Query subquery : getForm().getSubqueries()) {
+			classes.addAll(
+					new JoinGraph(subquery.getFromClass(), subquery.getFromAlias(), subquery.getJoins(), factory).getEntityClasses());
+		}
+		return classes;
+	}
+
+	/**
+	 * Executes, on the given Hibernate session, a row count for this query.
+	 *
+	 * @param session the Hibernate session
+	 * @return the number of rows returned by this query.
+	 */
+	public Long rowCount(Session session) {
+		return rowCount(session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes, on the given Hibernate session and with the given parameter
+	 * values, a row count for this query.
+	 *
+	 * @param session the Hibernate session
+	 * @param parameters the parameter values, by name
+	 * @return the number of rows returned by this query.
+	 */
+	public Long rowCount(Session session, Map<String, Object> parameters) {
+		if (empty) {
+			return 0L;
+		}
+		QueryTimer timer = QueryTimer.start(this, "rowCount");
+		ExecutionContext context = openContext(parameters, session);
+		try {
+			Criteria criteria = getExecutableCriteria(createCountCriteria(session, false), session);
+			timer.built();
+			Long result = (Long) criteria.uniqueResult();
+			timer.rows(result.intValue());
+			return result;
+		} finally {
+			context.close();
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Executes, on the given Hibernate session, a row count for this query that
+	 * stops at the given limit. When the result is equal to the limit, the query
+	 * returns at least this number of rows.
+	 *
+	 * @param session the Hibernate session
+	 * @param limit the maximum number of rows to count
+	 * @return the number of rows returned by this query, up to the limit
+	 */
+	public Long rowCount(Session session, long limit) {
+		return rowCount(session, limit, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes, on the given Hibernate session and with the given parameter
+	 * values, a row count for this query that stops at the given limit. When the
+	 * result is equal to the limit, the query returns at least this number of
+	 * rows.
+	 *
+	 * @param session the Hibernate session
+	 * @param limit the maximum number of rows to count
+	 * @param parameters the parameter values, by name
+	 * @return the number of rows returned by this query, up to the limit
+	 */
+	public Long rowCount(Session session, long limit, Map<String, Object> parameters) {
+		if (empty) {
+			return 0L;
+		}
+		QueryTimer timer = QueryTimer.start(this, "rowCount");
+		ExecutionContext context = openContext(parameters, session);
+		try {
+			Criteria criteria = getExecutableCriteria(createCountCriteria(session, true), session);
+			criteria.setMaxResults((int) Math.min(limit, Integer.MAX_VALUE));
+			timer.built();
+			int result = criteria.list().size();
+			timer.rows(result);
+			return Long.valueOf(result);
+		} finally {
+			context.close();
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning a single row.
+	 *
+	 * @param session the Hibernate session
+	 * @return a unique result
+	 */
+	public <T> T uniqueResult(Session session) {
+		return uniqueResult(session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, returning a single row.
+	 *
+	 * @param session the Hibernate session
+	 * @param parameters the parameter values, by name
+	 * @return a unique result
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T uniqueResult(Session session, Map<String, Object> parameters) {
+		if (resultCache == null) {
+			return executeUniqueResult(session, parameters);
+		}
+		Object key = Arrays.asList("uniqueResult", getCacheKey(parameters));
+		Object cached = resultCache.get(key);
+		if (cached != null) {
+			List<Object> result = fromCache(Collections.singletonList(cached), session);
+			if (result != null) {
+				return (T) result.get(0);
+			}
+		}
+		T result = executeUniqueResult(session, parameters);
+		if (result != null) {
+			List<Object> values = toCache(Collections.<Object>singletonList(result), session);
+			if (values != null) {
+				resultCache.put(key, getEntityClasses(session.getSessionFactory()), values.get(0));
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T executeUniqueResult(Session session, Map<String, Object> parameters) {
+		if (empty) {
+			return null;
+		}
+		QueryTimer timer = QueryTimer.start(this, "uniqueResult");
+		ExecutionContext context = openContext(parameters, session);
+		try {
+			DetachedCriteria detachedCriteria = createRootCriteria(session);
+			addOrders(detachedCriteria, getOrders(session, false));
+			Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+			addJoinFetches(criteria, session, false);
+			timer.built();
+			T result = (T) criteria.uniqueResult();
+			timer.executed();
+			if (result != null) {
+				fetchAfter(Collections.singletonList(result), session, false);
+			}
+			timer.rows(result == null ? 0 : 1);
+			return result;
+		} finally {
+			context.close();
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning a list of rows.
+	 *
+	 * @param session a Hibernate session
+	 * @return a result list
+	 */
+	public <T> List<T> list(Session session) {
+		return list(session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, returning a list of rows.
+	 *
+	 * @param session a Hibernate session
+	 * @param parameters the parameter values, by name
+	 * @return a result list
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> list(Session session, Map<String, Object> parameters) {
+		if (resultCache == null) {
+			return executeList(session, parameters);
+		}
+		Object key = Arrays.asList("list", getCacheKey(parameters));
+		List<Object> cached = (List<Object>) resultCache.get(key);
+		if (cached != null) {
+			List<Object> result = fromCache(cached, session);
+			if (result != null) {
+				return (List<T>) result;
+			}
+		}
+		List<T> result = executeList(session, parameters);
+		List<Object> values = toCache((List<Object>) result, session);
+		if (values != null) {
+			resultCache.put(key, getEntityClasses(session.getSessionFactory()), values);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the given rows into the values kept by the {@link ResultCache
+	 * result cache}, which must not hold entities, as they belong to the session
+	 * that loaded them: the rows of projections, when they have no entities, and
+	 * the primary keys of the root entities. Returns null when the rows can not
+	 * be cached, or when the session has uncommitted writes.
+	 */
+	private List<Object> toCache(List<Object> rows, Session session) {
+		if (EntityCacheInvalidator.hasUncommittedWrites(session)) {
+			return null;
+		}
+		SessionFactory factory = session.getSessionFactory();
+		List<Object> values = new ArrayList<Object>(rows.size());
+		if (projection != null) {
+			for (Object row : rows) {
+				for (Object value : (row instanceof Object[] ? (Object[]) row : new Object[] { row })) {
+					if (value instanceof HibernateProxy || (value != null && factory.getClassMetadata(value.getClass()) != null)) {
+						return null;
+					}
+				}
+				values.add(row instanceof Object[] ? ((Object[]) row).clone() : row);
+			}
+		} else {
+			ClassMetadata metadata = factory.getClassMetadata(fromClass);
+			if (metadata == null || getIdProperty(session) == null) {
+				return null;
+			}
+			for (Object row : rows) {
+				if (!fromClass.isInstance(row)) {
+					return null;
+				}
+				values.add(metadata.getIdentifier(row, (SessionImplementor) session));
+			}
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * Converts the values kept by the {@link ResultCache result cache} back into
+	 * rows: copies of the rows of projections, and the root entities of the
+	 * cached primary keys. The root entities already in the session or in the
+	 * second level cache are taken from there, without reading the database, and
+	 * only the other ones are loaded, in a single query. Returns null when some
+	 * root entity is not found anymore.
+	 */
+	private List<Object> fromCache(List<Object> values, Session session) {
+		List<Object> rows = new ArrayList<Object>(values.size());
+		if (projection != null) {
+			for (Object value : values) {
+				rows.add(value instanceof Object[] ? ((Object[]) value).clone() : value);
+			}
+			return rows;
+		}
+
+		SessionImplementor source = (SessionImplementor) session;
+		EntityPersister persister = source.getFactory().getEntityPersister(fromClass.getName());
+		Cache secondLevelCache = session.getSessionFactory().getCache();
+		Map<Object, Object> rootsById = new HashMap<Object, Object>();
+		List<Object> loaded = new ArrayList<Object>();
+		List<Object> missing = new ArrayList<Object>();
+		for (Object id : values) {
+			Serializable key = (Serializable) id;
+			Object root = source.getPersistenceContext().getEntity(source.generateEntityKey(key, persister));
+			if (root == null && secondLevelCache.containsEntity(fromClass, key)) {
+				root = session.get(fromClass, key);
+			}
+			if (root != null) {
+				rootsById.put(id, root);
+				loaded.add(root);
+			} else {
+				missing.add(id);
+			}
+		}
+		fetchAfter(loaded, session, false);
+		if (!missing.isEmpty()) {
+			for (Object root : loadRootsById(missing, session)) {
+				rootsById.put(persister.getIdentifier(root, source), root);
+			}
+		}
+
+		for (Object id : values) {
+			Object root = rootsById.get(id);
+			if (root == null) {
+				return null;
+			}
+			rows.add(root);
+		}
+		return rows;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> List<T> executeList(SharedSessionContract session, Map<String, Object> parameters) {
+		if (empty) {
+			return new ArrayList<T>();
+		}
+		QueryTimer timer = QueryTimer.start(this, "list");
+		ExecutionContext context = openContext(parameters, session);
+		try {
+			DetachedCriteria detachedCriteria = createRootCriteria(session);
+			addOrders(detachedCriteria, getOrders(session, false));
+			Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+			addJoinFetches(criteria, session, false);
+			timer.built();
+			List<T> result = criteria.list();
+			timer.executed();
+			result = fetchAfter(result, session, false);
+			timer.rows(result.size());
+			return result;
+		} finally {
+			context.close();
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning the list of rows
+	 * of the given page number and page size.
+	 *
+	 * @param number the page number
+	 * @param size the page size
+	 * @param session the Hibernate session
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(int number, int size, Session session) {
+		return getPage(number, size, session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, returning the list of rows of the given page number and
+	 * page size.
+	 *
+	 * @param number the page number
+	 * @param size the page size
+	 * @param session the Hibernate session
+	 * @param parameters the parameter values, by name
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(int number, int size, Session session, Map<String, Object> parameters) {
+		return executePage(number, size, session, parameters);
+	}
+
+	private <T> List<T> executePage(int number, int size, SharedSessionContract session,
+			Map<String, Object> parameters) {
+		if (number <= 0) {
+			number = 1;
+		}
+		if (size <= 0) {
+			size = 10;
+		}
+		if (empty) {
+			return new ArrayList<T>();
+		}
+
+		QueryTimer timer = QueryTimer.start(this, "getPage");
+		ExecutionContext context = openContext(parameters, session);
+		try {
+			List<Order> pageOrders = getOrders(session, true);
+			if (isJoinedRootEntity(session)) {
+				DetachedCriteria detachedCriteria = createCriteria(session);
+				timer.built();
+				List<T> result = listRootsById(detachedCriteria, pageOrders, (number - 1) * size, size, session);
+				timer.rows(result.size());
+				return result;
+			}
+
+			DetachedCriteria detachedCriteria = createCriteria(session);
+			addOrders(detachedCriteria, pageOrders);
+
+			Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+			criteria.setFirstResult((number - 1) * size);
+			criteria.setMaxResults(size);
+			addJoinFetches(criteria, session, true);
+			timer.built();
+
+			@SuppressWarnings("unchecked")
+			List<T> result = criteria.list();
+			timer.executed();
+
+			result = fetchAfter(result, session, true);
+			timer.rows(result.size());
+			return result;
+		} finally {
+			context.close();
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning a forward-only
+	 * cursor over its rows. The rows are fetched from the database in blocks of
+	 * the given fetch size, and the session is flushed and cleared once every
+	 * fetch size rows.
+	 *
+	 * @param session the Hibernate session
+	 * @param fetchSize the JDBC fetch size
+	 * @return {@link ResultCursor}
+	 * @see #scroll(StatelessSession, int)
+	 */
+	public <T> ResultCursor<T> scroll(Session session, int fetchSize) {
+		return scroll(session, fetchSize, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, returning a forward-only cursor over its rows. The rows
+	 * are fetched from the database in blocks of the given fetch size.
+	 *
+	 * @param session the Hibernate session
+	 * @param fetchSize the JDBC fetch size, or 0 for the {@link Query#hints() hinted} one
+	 * @param parameters the parameter values, by name
+	 * @return {@link ResultCursor}
+	 */
+	public <T> ResultCursor<T> scroll(Session session, int fetchSize, Map<String, Object> parameters) {
+		return openCursor(session, fetchSize, parameters);
+	}
+
+	private <T> ResultCursor<T> openCursor(SharedSessionContract session, int fetchSize,
+			Map<String, Object> parameters) {
+		if (fetchSize <= 0) {
+			fetchSize = (hints.getFetchSize() != null ? hints.getFetchSize() : 100);
+		}
+		Session stateful = (session instanceof Session ? (Session) session : null);
+
+		QueryTimer timer = QueryTimer.start(this, "scroll");
+		if (empty) {
+			return new ResultCursor<T>(null, stateful, fetchSize, timer);
+		}
+		ExecutionContext context = openContext(parameters, session);
+		boolean opened = false;
+		try {
+			DetachedCriteria detachedCriteria = createRootCriteria(session);
+			addOrders(detachedCriteria, getOrders(session, false));
+
+			Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+			criteria.setFetchSize(fetchSize);
+			timer.built();
+
+			ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+			timer.executed();
+			opened = true;
+			return new ResultCursor<T>(results, stateful, fetchSize, timer);
+		} finally {
+			context.close();
+			if (!opened) {
+				timer.stop();
+			}
+		}
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning a stream of its
+	 * rows, read from a {@link #scroll(Session, int) cursor}. The stream must be
+	 * closed after use.
+	 *
+	 * @param session the Hibernate session
+	 * @param fetchSize the JDBC fetch size
+	 * @return a stream of rows
+	 */
+	public <T> Stream<T> stream(Session session, int fetchSize) {
+		return stream(session, fetchSize, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, returning a stream of its rows, read from a
+	 * {@link #scroll(Session, int, Map) cursor}. The stream must be closed after
+	 * use.
+	 *
+	 * @param session the Hibernate session
+	 * @param fetchSize the JDBC fetch size
+	 * @param parameters the parameter values, by name
+	 * @return a stream of rows
+	 */
+	public <T> Stream<T> stream(Session session, int fetchSize, Map<String, Object> parameters) {
+		return toStream(this.<T>scroll(session, fetchSize, parameters));
+	}
+
+	private static <T> Stream<T> toStream(final ResultCursor<T> cursor) {
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED);
+		return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+
+			@Override
+			public void run() {
+				cursor.close();
+			}
+		});
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, reading its projections
+	 * into a {@link ColumnarResult columnar result}, with primitive arrays
+	 * instead of a boxed array for each row, as for large aggregations. The rows
+	 * are read from a forward-only cursor, and the columns are grown from the
+	 * {@link Query#hints() hinted} fetch size. The result transformer, if any,
+	 * is ignored.
+	 *
+	 * @param session the Hibernate session
+	 * @return {@link ColumnarResult}
+	 */
+	public ColumnarResult columnar(Session session) {
+		return columnar(session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, reading its projections into a {@link ColumnarResult
+	 * columnar result}.
+	 *
+	 * @param session the Hibernate session
+	 * @param parameters the parameter values, by name
+	 * @return {@link ColumnarResult}
+	 * @see #columnar(Session)
+	 */
+	public ColumnarResult columnar(Session session, Map<String, Object> parameters) {
+		return readColumns(session, parameters);
+	}
+
+	private ColumnarResult readColumns(SharedSessionContract session, Map<String, Object> parameters) {
+		if (projection == null) {
+			throw new RuntimeException("Columnar results require projections");
+		}
+		int fetchSize = (hints.getFetchSize() != null ? hints.getFetchSize() : 100);
+
+		List<ColumnarResult.Builder> builders = new ArrayList<ColumnarResult.Builder>(columnNames.size());
+		for (int i = 0; i < columnNames.size(); i++) {
+			builders.add(new ColumnarResult.Builder(fetchSize));
+		}
+
+		int rowCount = 0;
+		if (!empty) {
+			QueryTimer timer = QueryTimer.start(this, "columnar");
+			try {
+				ScrollableResults results;
+				ExecutionContext context = openContext(parameters, session);
+				try {
+					DetachedCriteria detachedCriteria = createCriteria(session);
+					addOrders(detachedCriteria, getOrders(session, false));
+
+					Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+					criteria.setResultTransformer(Criteria.PROJECTION);
+					criteria.setFetchSize(fetchSize);
+					timer.built();
+					results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+					timer.executed();
+				} finally {
+					context.close();
+				}
+
+				try {
+					while (results.next()) {
+						Object[] row = results.get();
+						for (int i = 0; i < builders.size(); i++) {
+							builders.get(i).add(row[i]);
+						}
+						rowCount++;
+					}
+				} finally {
+					results.close();
+				}
+				timer.rows(rowCount);
+			} finally {
+				timer.stop();
+			}
+		}
+
+		List<ColumnarResult.Column> columns = new ArrayList<ColumnarResult.Column>(builders.size());
+		for (ColumnarResult.Builder builder : builders) {
+			columns.add(builder.build());
+		}
+		return new ColumnarResult(rowCount, columnNames, columns);
+	}
+
+	/**
+	 * Tells if the query has a {@link Query#keyset() keyset}, required by the
+	 * keyset pagination.
+	 *
+	 * @return true if the query has a keyset
+	 */
+	public boolean hasKeyset() {
+		return !keyProperties.isEmpty();
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session, returning the page of
+	 * the given size that follows the given key.
+	 *
+	 * @param after the key of the last row of the previous page, or null for the
+	 *        first page
+	 * @param size the page size
+	 * @param session the Hibernate session
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(Object[] after, int size, Session session) {
+		return getPage(after, size, session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given Hibernate session and with the given
+	 * parameter values, returning the page of the given size that follows the
+	 * given key.
+	 *
+	 * @param after the key of the last row of the previous page, or null for the
+	 *        first page
+	 * @param size the page size
+	 * @param session the Hibernate session
+	 * @param parameters the parameter values, by name
+	 * @return the result list of the page
+	 */
+	public <T> List<T> getPage(Object[] after, int size, Session session, Map<String, Object> parameters) {
+		return executeKeysetPage(after, size, session, parameters);
+	}
+
+	private <T> List<T> executeKeysetPage(Object[] after, int size, SharedSessionContract session,
+			Map<String, Object> parameters) {
+		if (!hasKeyset()) {
+			throw new RuntimeException("Query has no keyset");
+		}
+		if (after != null && after.length != keyProperties.size()) {
+			throw new RuntimeException("Key does not match the query keyset");
+		}
+		if (size <= 0) {
+			size = 10;
+		}
+		if (empty) {
+			return new ArrayList<T>();
+		}
+
+		QueryTimer timer = QueryTimer.start(this, "getPage");
+		ExecutionContext context = openContext(parameters, session);
+		try {
+			boolean[] nullable = getNullableKeys(session);
+			DetachedCriteria detachedCriteria = createCriteria(session);
+			if (after != null) {
+				detachedCriteria.add(seek(after, nullable));
+			}
+			List<Order> keyOrders = new ArrayList<Order>(keyProperties.size());
+			for (int i = 0; i < keyProperties.size(); i++) {
+				String property = keyProperties.get(i);
+				Order order = (keyAscending.get(i) ? Order.asc(property) : Order.desc(property));
+				keyOrders.add(nullable[i] ? order.nulls(NullPrecedence.LAST) : order);
+			}
+			if (isJoinedRootEntity(session)) {
+				timer.built();
+				List<T> result = listRootsById(detachedCriteria, keyOrders, 0, size, session);
+				timer.rows(result.size());
+				return result;
+			}
+			addOrders(detachedCriteria, keyOrders);
+
+			Criteria criteria = getExecutableCriteria(detachedCriteria, session);
+			criteria.setMaxResults(size);
+			addJoinFetches(criteria, session, true);
+			timer.built();
+
+			@SuppressWarnings("unchecked")
+			List<T> result = criteria.list();
+			timer.executed();
+
+			result = fetchAfter(result, session, true);
+			timer.rows(result.size());
+			return result;
+		} finally {
+			context.close();
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning a list of
+	 * rows. The rows are neither kept on a persistence context nor checked for
+	 * changes, which suits bulk reads of projections. Associations fetched after
+	 * the query, with {@link FetchStrategy#SUBSELECT} or
+	 * {@link FetchStrategy#batch(int) BATCH}, are not loaded, as there is no
+	 * session to initialize them on.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @return a result list
+	 */
+	public <T> List<T> list(StatelessSession session) {
+		return list(session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given stateless session and with the given
+	 * parameter values, returning a list of rows.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @param parameters the parameter values, by name
+	 * @return a result list
+	 * @see #list(StatelessSession)
+	 */
+	public <T> List<T> list(StatelessSession session, Map<String, Object> parameters) {
+		return executeList(session, parameters);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning the list of
+	 * rows of the given page number and page size.
+	 *
+	 * @param number the page number
+	 * @param size the page size
+	 * @param session the Hibernate stateless session
+	 * @return the result list of the page
+	 * @see #list(StatelessSession)
+	 */
+	public <T> List<T> getPage(int number, int size, StatelessSession session) {
+		return getPage(number, size, session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given stateless session and with the given
+	 * parameter values, returning the list of rows of the given page number and
+	 * page size.
+	 *
+	 * @param number the page number
+	 * @param size the page size
+	 * @param session the Hibernate stateless session
+	 * @param parameters the parameter values, by name
+	 * @return the result list of the page
+	 * @see #list(StatelessSession)
+	 */
+	public <T> List<T> getPage(int number, int size, StatelessSession session, Map<String, Object> parameters) {
+		return executePage(number, size, session, parameters);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning the page of
+	 * the given size that follows the given key.
+	 *
+	 * @param after the key of the last row of the previous page, or null for the
+	 *        first page
+	 * @param size the page size
+	 * @param session the Hibernate stateless session
+	 * @return the result list of the page
+	 * @see #list(StatelessSession)
+	 */
+	public <T> List<T> getPage(Object[] after, int size, StatelessSession session) {
+		return getPage(after, size, session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given stateless session and with the given
+	 * parameter values, returning the page of the given size that follows the
+	 * given key.
+	 *
+	 * @param after the key of the last row of the previous page, or null for the
+	 *        first page
+	 * @param size the page size
+	 * @param session the Hibernate stateless session
+	 * @param parameters the parameter values, by name
+	 * @return the result list of the page
+	 * @see #list(StatelessSession)
+	 */
+	public <T> List<T> getPage(Object[] after, int size, StatelessSession session, Map<String, Object> parameters) {
+		return executeKeysetPage(after, size, session, parameters);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning a forward-only
+	 * cursor over its rows. As nothing is kept by a stateless session, the memory
+	 * used stays flat without flushing or clearing a session.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @param fetchSize the JDBC fetch size
+	 * @return {@link ResultCursor}
+	 */
+	public <T> ResultCursor<T> scroll(StatelessSession session, int fetchSize) {
+		return scroll(session, fetchSize, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given stateless session and with the given
+	 * parameter values, returning a forward-only cursor over its rows.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @param fetchSize the JDBC fetch size, or 0 for the {@link Query#hints() hinted} one
+	 * @param parameters the parameter values, by name
+	 * @return {@link ResultCursor}
+	 * @see #scroll(StatelessSession, int)
+	 */
+	public <T> ResultCursor<T> scroll(StatelessSession session, int fetchSize, Map<String, Object> parameters) {
+		return openCursor(session, fetchSize, parameters);
+	}
+
+	/**
+	 * Executes the query on the given stateless session, returning a stream of
+	 * its rows, read from a {@link #scroll(StatelessSession, int) cursor}. The
+	 * stream must be closed after use.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @param fetchSize the JDBC fetch size
+	 * @return a stream of rows
+	 */
+	public <T> Stream<T> stream(StatelessSession session, int fetchSize) {
+		return stream(session, fetchSize, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given stateless session and with the given
+	 * parameter values, returning a stream of its rows. The stream must be closed
+	 * after use.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @param fetchSize the JDBC fetch size
+	 * @param parameters the parameter values, by name
+	 * @return a stream of rows
+	 */
+	public <T> Stream<T> stream(StatelessSession session, int fetchSize, Map<String, Object> parameters) {
+		return toStream(this.<T>scroll(session, fetchSize, parameters));
+	}
+
+	/**
+	 * Executes the query on the given stateless session, reading its projections
+	 * into a {@link ColumnarResult columnar result}.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @return {@link ColumnarResult}
+	 * @see #columnar(Session)
+	 */
+	public ColumnarResult columnar(StatelessSession session) {
+		return columnar(session, NO_PARAMETERS);
+	}
+
+	/**
+	 * Executes the query on the given stateless session and with the given
+	 * parameter values, reading its projections into a {@link ColumnarResult
+	 * columnar result}.
+	 *
+	 * @param session the Hibernate stateless session
+	 * @param parameters the parameter values, by name
+	 * @return {@link ColumnarResult}
+	 * @see #columnar(Session)
+	 */
+	public ColumnarResult columnar(StatelessSession session, Map<String, Object> parameters) {
+		return readColumns(session, parameters);
+	}
+
+	/**
+	 * Reads, from a row returned by this query, the values of its
+	 * {@link Query#keyset() keyset}. The row must be an instance of the root
+	 * entity.
+	 *
+	 * @param row a row returned by this query
+	 * @param session the Hibernate session
+	 * @return the key of the row
+	 */
+	public Object[] getKey(Object row, Session session) {
+		if (!hasKeyset()) {
+			throw new RuntimeException("Query has no keyset");
+		}
+		if (!fromClass.isInstance(row)) {
+			throw new RuntimeException("Keyset pagination requires the root entity to be selected");
+		}
+
+		ClassMetadata metadata = session.getSessionFactory().getClassMetadata(fromClass);
+		Object[] key = new Object[keyProperties.size()];
+		for (int i = 0; i < key.length; i++) {
+			String property = getRootProperty(keyProperties.get(i));
+			if (property.equals(metadata.getIdentifierPropertyName())) {
+				key[i] = metadata.getIdentifier(row, (SessionImplementor) session);
+			} else {
+				key[i] = metadata.getPropertyValue(row, property);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Tells, for each key property, if it may be null: the identifier and the
+	 * properties mapped as not nullable can not, and the properties of
+	 * components are taken as nullable.
+	 */
+	private boolean[] getNullableKeys(SharedSessionContract session) {
+		EntityMetamodel metamodel = ((SessionImplementor) session).getFactory().getEntityPersister(fromClass.getName())
+				.getEntityMetamodel();
+		String id = getFactory(session).getClassMetadata(fromClass).getIdentifierPropertyName();
+		boolean[] nullable = new boolean[keyProperties.size()];
+		for (int i = 0; i < nullable.length; i++) {
+			String property = getRootProperty(keyProperties.get(i));
+			Integer index = metamodel.getPropertyIndexOrNull(property);
+			if (index != null) {
+				nullable[i] = metamodel.getPropertyNullability()[index];
+			} else {
+				nullable[i] = !property.equals(id);
+			}
+		}
+		return nullable;
+	}
+
+	/**
+	 * Creates the predicate of the rows that follow the given key, in the key
+	 * order, with the nulls of the nullable properties sorted last. A null key
+	 * value is matched with is null, and is followed by no other value, so a key
+	 * of nulls only is followed by no row.
+	 */
+	private Criterion seek(Object[] after, boolean[] nullable) {
+		Disjunction seek = Restrictions.disjunction();
+		boolean followed = false;
+		for (int i = 0; i < after.length; i++) {
+			if (after[i] == null) {
+				if (!nullable[i]) {
+					throw new RuntimeException("Key does not match the query keyset");
+				}
+				continue;
+			}
+			Conjunction step = Restrictions.conjunction();
+			for (int j = 0; j < i; j++) {
+				String property = keyProperties.get(j);
+				step.add(after[j] == null ? Restrictions.isNull(property) : Restrictions.eq(property, after[j]));
+			}
+			String property = keyProperties.get(i);
+			Criterion next = (keyAscending.get(i) ? Restrictions.gt(property, after[i])
+					: Restrictions.lt(property, after[i]));
+			step.add(nullable[i] ? Restrictions.or(next, Restrictions.isNull(property)) : next);
+			seek.add(step);
+			followed = true;
+		}
+		return (followed ? seek : Restrictions.sqlRestriction("1=0"));
+	}
+}
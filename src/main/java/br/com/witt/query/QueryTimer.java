@@ -0,0 +1,102 @@
+package br.com.witt.query;
+
+/**
+ * Times the phases of one execution of a {@link QueryTemplate} and reports them
+ * to the installed {@link QueryInstrumentation}. When no instrumentation is
+ * installed, {@link #start(QueryTemplate, String)} returns a timer that does
+ * nothing, so the clock is not even read.
+ *
+ * @author Luciano Witt
+ *
+ */
+class QueryTimer {
+
+	private static volatile QueryInstrumentation instrumentation = QueryInstrumentation.NONE;
+
+	private static final QueryTimer NONE = new QueryTimer(null, null, null) {
+
+		@Override
+		void built() {
+		}
+
+		@Override
+		void executed() {
+		}
+
+		@Override
+		void rows(int rows) {
+		}
+
+		@Override
+		void stop() {
+		}
+	};
+
+	private QueryInstrumentation target;
+	private QueryTemplate template;
+	private String operation;
+	private long start;
+	private long built;
+	private long executed;
+	private int rows;
+
+	private QueryTimer(QueryInstrumentation target, QueryTemplate template, String operation) {
+		this.target = target;
+		this.template = template;
+		this.operation = operation;
+		this.start = (target == null ? 0L : System.nanoTime());
+		this.built = 0L;
+		this.executed = 0L;
+		this.rows = -1;
+	}
+
+	static void install(QueryInstrumentation instrumentation) {
+		QueryTimer.instrumentation = instrumentation;
+	}
+
+	static QueryInstrumentation installed() {
+		return instrumentation;
+	}
+
+	static QueryTimer start(QueryTemplate template, String operation) {
+		QueryInstrumentation target = instrumentation;
+		if (target == QueryInstrumentation.NONE) {
+			return NONE;
+		}
+		return new QueryTimer(target, template, operation);
+	}
+
+	/**
+	 * Marks the end of the build phase, when the criteria is ready to run.
+	 */
+	void built() {
+		built = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of the execution phase, when the main query returned.
+	 */
+	void executed() {
+		executed = System.nanoTime();
+	}
+
+	/**
+	 * Sets the number of rows returned, which marks the execution as successful.
+	 *
+	 * @param rows
+	 */
+	void rows(int rows) {
+		this.rows = rows;
+	}
+
+	/**
+	 * Reports the execution. The phases that were not marked take no time.
+	 */
+	void stop() {
+		long end = System.nanoTime();
+		long builtAt = (built == 0L ? start : built);
+		long executedAt = (executed == 0L ? end : executed);
+		target.executed(new QueryExecution(operation, template.getFingerprint(), builtAt - start, executedAt - builtAt,
+				end - executedAt, Math.max(rows, 0), rows < 0));
+	}
+}
@@ -0,0 +1,31 @@
+package br.com.witt.query;
+
+/**
+ * In-process cache of query results, in front of the database. It is meant for
+ * queries that return the same rows many times, as the lookups of reference
+ * data. The results are kept by the {@link QueryTemplate#getCacheKey(java.util.Map)
+ * key} of the query and its parameter values, and are dropped when a change to
+ * an entity read by the query is committed. Results read by a session with
+ * uncommitted writes are not cached.
+ * <p>
+ * Entities are not shared between sessions: the rows of projections are cached
+ * only when they have no entities, and queries for root entities cache their
+ * primary keys, and take the entities of the cached keys from the session or
+ * the second level cache of the reader, loading only the other ones, in a
+ * single query.
+ * <p>
+ * The results are only invalidated by the {@link EntityCacheInvalidator}, on
+ * the changes made through the Hibernate sessions of this JVM. Bulk HQL or
+ * native SQL updates, and the changes made by other JVMs or applications, are
+ * not seen: the cached results stay until their time to live expires, or
+ * until the cache is {@link #clear() cleared}.
+ *
+ * @see Query#cache(ResultCache)
+ * @see LruResultCache
+ * @see EntityCacheInvalidator
+ *
+ * @author Luciano Witt
+ *
+ */
+public interface ResultCache extends EntityCache<Object> {
+}
@@ -0,0 +1,138 @@
+package br.com.witt.query;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * Forward-only cursor over the rows of a query, backed by Hibernate's
+ * {@link ScrollableResults}. The rows are read from the database as they are
+ * consumed, and once every interval of rows the session is flushed and
+ * cleared, so the memory used stays flat no matter how many rows are returned:
+ * the returned entities, and the associations and collections loaded through
+ * them, are all released.
+ * <p>
+ * Clearing detaches every entity of the session, the ones loaded before the
+ * cursor was opened included, and the lazy associations of the returned
+ * entities can only be accessed while they are the current row. The changes
+ * made on the processed rows are flushed before, even when the session flush
+ * mode is manual. When the rows are only read, the stateless session overload
+ * is preferred: a stateless session keeps nothing, so there is nothing to
+ * flush or clear. The root entities of a query with joins are returned once each, as
+ * by {@link Query#list(Session)}, unless the query is ordered by a property of
+ * a joined entity: then each root entity is returned once per joined row.
+ * <p>
+ * The cursor must be closed, or read until the end, to release the underlying
+ * JDBC result set. The execution is reported to the
+ * {@link QueryInstrumentation installed instrumentation} when the cursor is
+ * closed, with the number of rows read.
+ *
+ * @see Query#scroll(Session, int)
+ * @see Query#stream(Session, int)
+ *
+ * @author Luciano Witt
+ *
+ */
+public class ResultCursor<T> implements Iterator<T>, Closeable {
+
+	private ScrollableResults results;
+	private Session session;
+	private int clearInterval;
+	private QueryTimer timer;
+	private int processed;
+	private boolean fetched;
+	private boolean hasNext;
+	private boolean closed;
+	private boolean failed;
+	private int rows;
+
+	/**
+	 * Creates a cursor over the given results, or an empty cursor when they are
+	 * null, that reports its execution to the given timer when closed.
+	 */
+	ResultCursor(ScrollableResults results, Session session, int clearInterval, QueryTimer timer) {
+		this.results = results;
+		this.session = session;
+		this.clearInterval = (clearInterval <= 0 ? 1 : clearInterval);
+		this.timer = timer;
+		this.processed = 0;
+		this.fetched = false;
+		this.hasNext = false;
+		this.closed = false;
+		this.failed = false;
+		this.rows = 0;
+		if (results == null) {
+			close();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (!fetched) {
+			try {
+				if (processed >= clearInterval) {
+					clearSession();
+				}
+				hasNext = results.next();
+			} catch (RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+			fetched = true;
+			if (!hasNext) {
+				close();
+			}
+		}
+		return hasNext;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		fetched = false;
+
+		Object[] row = results.get();
+		Object result = (row.length == 1 ? row[0] : row);
+		processed++;
+		rows++;
+		return (T) result;
+	}
+
+	/**
+	 * Flushes the changes made on the processed rows and clears the session,
+	 * releasing every entity it keeps.
+	 */
+	private void clearSession() {
+		if (session != null) {
+			session.flush();
+			session.clear();
+		}
+		processed = 0;
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			try {
+				if (results != null) {
+					results.close();
+				}
+			} finally {
+				if (!failed) {
+					timer.rows(rows);
+				}
+				timer.stop();
+			}
+		}
+	}
+}
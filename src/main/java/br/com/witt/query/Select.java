@@ -1,6 +1,7 @@
 package br.com.witt.query;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.hibernate.Criteria;
@@ -8,23 +9,40 @@ import org.hibernate.criterion.Projection;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.transform.ResultTransformer;
-import org.hibernate.transform.Transformers;
 import org.hibernate.type.Type;
 
 public class Select {
 
+	private Query query;
 	private boolean empty;
 	private boolean single;
 	private boolean distinct;
 	private List<Projection> projections;
+	private List<String> descriptions;
+	private List<String> aliases;
+	private List<String> properties;
+	private boolean opaque;
+	private boolean aggregate;
+	private boolean grouped;
 	protected ResultTransformer resultTransformer;
+	private Class<?> resultBean;
+	private Class<?> resultConstructor;
 
 	protected Select(Query query) {
+		this.query = query;
 		empty = true;
 		single = false;
 		distinct = false;
 		projections = new ArrayList<Projection>();
+		descriptions = new ArrayList<String>();
+		aliases = new ArrayList<String>();
+		properties = new ArrayList<String>();
+		opaque = false;
+		aggregate = false;
+		grouped = false;
 		resultTransformer = null;
+		resultBean = null;
+		resultConstructor = null;
 	}
 
 	/**
@@ -33,7 +51,7 @@ public class Select {
 	 * @return This {@link Select select}
 	 */
 	public Select id() {
-		add(Projections.id());
+		add(Projections.id(), null, "id");
 		return this;
 	}
 
@@ -45,7 +63,7 @@ public class Select {
 	 * @return This {@link Select select}
 	 */
 	public Select id(String alias) {
-		add(Projections.id(), alias);
+		add(Projections.id(), alias, "id");
 		return this;
 	}
 
@@ -55,7 +73,8 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select rowCount() {
-		add(Projections.rowCount());
+		add(Projections.rowCount(), null, "count(*)");
+		aggregate = true;
 		return this;
 	}
 
@@ -66,7 +85,8 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select rowCount(String alias) {
-		add(Projections.rowCount(), alias);
+		add(Projections.rowCount(), alias, "count(*)");
+		aggregate = true;
 		return this;
 	}
 
@@ -77,6 +97,7 @@ public class Select {
 	 */
 	public Select distinct() {
 		distinct = true;
+		query.modified();
 		return this;
 	}
 
@@ -87,7 +108,8 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select property(String property) {
-		add(Projections.property(property));
+		add(Projections.property(property), null, "property(" + property + ")");
+		properties.add(property);
 		return this;
 	}
 
@@ -99,7 +121,8 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select property(String property, String alias) {
-		add(Projections.property(property), alias);
+		add(Projections.property(property), alias, "property(" + property + ")");
+		properties.add(property);
 		return this;
 	}
 
@@ -110,7 +133,9 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select group(String property) {
-		add(Projections.groupProperty(property));
+		add(Projections.groupProperty(property), null, "group(" + property + ")");
+		properties.add(property);
+		grouped = true;
 		return this;
 	}
 
@@ -123,7 +148,9 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select group(String property, String alias) {
-		add(Projections.groupProperty(property), alias);
+		add(Projections.groupProperty(property), alias, "group(" + property + ")");
+		properties.add(property);
+		grouped = true;
 		return this;
 	}
 
@@ -136,7 +163,9 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select max(String property, String alias) {
-		add(Projections.max(property), alias);
+		add(Projections.max(property), alias, "max(" + property + ")");
+		properties.add(property);
+		aggregate = true;
 		return this;
 	}
 
@@ -149,7 +178,9 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select min(String property, String alias) {
-		add(Projections.min(property), alias);
+		add(Projections.min(property), alias, "min(" + property + ")");
+		properties.add(property);
+		aggregate = true;
 		return this;
 	}
 
@@ -162,7 +193,9 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select sum(String property, String alias) {
-		add(Projections.sum(property), alias);
+		add(Projections.sum(property), alias, "sum(" + property + ")");
+		properties.add(property);
+		aggregate = true;
 		return this;
 	}
 
@@ -175,7 +208,9 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select avg(String property, String alias) {
-		add(Projections.avg(property), alias);
+		add(Projections.avg(property), alias, "avg(" + property + ")");
+		properties.add(property);
+		aggregate = true;
 		return this;
 	}
 
@@ -189,7 +224,10 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select sql(String sql, String[] columnAliases, Type[] types) {
-		add(Projections.sqlProjection(sql, columnAliases, types));
+		add(Projections.sqlProjection(sql, columnAliases, types), null,
+				"sql(" + sql + ", " + Arrays.toString(columnAliases) + ")");
+		opaque = true;
+		aggregate = true;
 		return this;
 	}
 
@@ -204,22 +242,38 @@ public class Select {
 	 * @return {@link Select select}
 	 */
 	public Select sqlGroup(String sql, String groupBy, String[] columnAliases, Type[] types) {
-		add(Projections.sqlGroupProjection(sql, groupBy, columnAliases, types));
+		add(Projections.sqlGroupProjection(sql, groupBy, columnAliases, types), null,
+				"sqlGroup(" + sql + ", " + groupBy + ", " + Arrays.toString(columnAliases) + ")");
+		opaque = true;
+		grouped = true;
 		return this;
 	}
 
 	/**
 	 * Like in a "SELECT DISTINCT * FROM ...", the query will return a list of
 	 * distinct instances of the root entity o the query.
+	 * <p>
+	 * When the query has joins, the distinct root entities are selected by the
+	 * database, through their primary keys, so the joined rows are neither
+	 * transferred nor hydrated, and the pages have the requested size.
 	 * 
 	 * @return {@link Select select}
 	 */
 	public Select rootEntity() {
 		resultTransformer = Criteria.DISTINCT_ROOT_ENTITY;
+		resultBean = null;
+		resultConstructor = null;
 		projections.clear();
+		descriptions.clear();
+		aliases.clear();
+		properties.clear();
+		opaque = false;
+		aggregate = false;
+		grouped = false;
 		empty = true;
 		single = false;
 		distinct = false;
+		query.modified();
 		return this;
 	}
 
@@ -227,39 +281,134 @@ public class Select {
 	 * Setup the query to return a list of instances of the given bean class. The
 	 * query selected property aliases must match the given bean class property
 	 * names.
+	 * <p>
+	 * The setters of the bean class, or its fields, are resolved once for each
+	 * list of aliases, and reused by every row.
 	 * 
 	 * @param beanClass
 	 * @return {@link Select select}
 	 */
 	public Select bean(Class<?> beanClass) {
-		resultTransformer = Transformers.aliasToBean(beanClass);
+		resultTransformer = new BeanTransformer(beanClass);
+		resultBean = beanClass;
+		resultConstructor = null;
+		query.modified();
 		return this;
 	}
 
-	private void add(Projection projection) {
+	/**
+	 * Setup the query to return a list of instances of the given class, created
+	 * by its constructor with one parameter for each selected projection, in the
+	 * order they are selected, as for immutable DTOs. The class must have only
+	 * one constructor with this number of parameters.
+	 * 
+	 * @param resultClass
+	 * @return {@link Select select}
+	 */
+	public Select constructor(Class<?> resultClass) {
+		resultTransformer = null;
+		resultBean = null;
+		resultConstructor = resultClass;
+		query.modified();
+		return this;
+	}
+
+	private void add(Projection projection, String alias, String description) {
 		if (empty) {
 			empty = false;
 			single = true;
 		} else if (single) {
 			single = false;
 		}
-		projections.add(projection);
+		if (alias == null) {
+			projections.add(projection);
+			descriptions.add(description);
+		} else {
+			projections.add(Projections.alias(projection, alias));
+			descriptions.add(description + " as " + alias);
+		}
+		aliases.add(alias);
+		query.modified();
 	}
 
-	private void add(Projection projection, String alias) {
-		if (empty) {
-			empty = false;
-			single = true;
-		} else if (single) {
-			single = false;
+	/**
+	 * Tells if the selected projections may reference the given alias.
+	 * 
+	 * @param alias
+	 * @return true if the alias may be referenced
+	 */
+	protected boolean references(String alias) {
+		if (opaque) {
+			return true;
+		}
+		for (String property : properties) {
+			if (Condition.references(property, alias)) {
+				return true;
+			}
 		}
-		projections.add(Projections.alias(projection, alias));
+		return false;
+	}
+
+	protected void describe(CanonicalForm form) {
+		if (isRootEntity()) {
+			form.append("root");
+			return;
+		}
+		if (distinct) {
+			form.append("distinct ");
+		}
+		for (int i = 0; i < descriptions.size(); i++) {
+			form.append(i == 0 ? "" : ", ").append(descriptions.get(i));
+		}
+		if (resultBean != null) {
+			form.append(" bean(").append(resultBean.getName()).append(")");
+		}
+		if (resultConstructor != null) {
+			form.append(" constructor(").append(resultConstructor.getName()).append(")");
+		}
+	}
+
+	protected boolean isRootEntity() {
+		return empty && resultTransformer == Criteria.DISTINCT_ROOT_ENTITY;
+	}
+
+	/**
+	 * Tells if the projections aggregate all the rows into one, without a GROUP
+	 * BY, so the query returns a row even when no rows match its conditions.
+	 * Opaque SQL projections are taken as aggregations.
+	 * 
+	 * @return true if there is an aggregation without grouping
+	 */
+	protected boolean hasUngroupedAggregate() {
+		return aggregate && !grouped;
+	}
+
+	/**
+	 * Tells if the projections have aggregations or groupings.
+	 * 
+	 * @return true if the rows are aggregated
+	 */
+	protected boolean isAggregated() {
+		return aggregate || grouped;
 	}
 
 	protected ResultTransformer getResultTransformer() {
+		if (resultConstructor != null) {
+			return new ConstructorTransformer(resultConstructor, projections.size());
+		}
 		return resultTransformer;
 	}
 
+	/**
+	 * Returns the aliases of the selected projections, null for the ones
+	 * selected without an alias.
+	 * 
+	 * @return the aliases
+	 */
+	protected List<String> getAliases() {
+		return aliases;
+	}
+
 	protected boolean hasProjection() {
 		return !empty;
 	}
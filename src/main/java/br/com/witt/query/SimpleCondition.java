@@ -1,17 +1,131 @@
 package br.com.witt.query;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.hibernate.criterion.Criterion;
 
 public class SimpleCondition extends Condition {
 
+	/**
+	 * SQL chunks used as markers of an always false condition.
+	 */
+	private static final Set<String> FALSE_SQL = new HashSet<String>(
+			Arrays.asList("sql(1=0)", "sql(0=1)", "sql(1=2)", "sql(false)"));
+
 	private Criterion criterion;
+	private String operator;
+	private String[] properties;
+	private Object[] values;
 
+	/**
+	 * Creates a condition for a criterion whose referenced properties are not
+	 * known, as a SQL chunk.
+	 *
+	 * @param criterion
+	 */
 	public SimpleCondition(Criterion criterion) {
+		this(criterion, null, null, null);
+	}
+
+	/**
+	 * Creates a condition for a criterion that applies the given operator to the
+	 * given properties and values. With a single property, the operator compares
+	 * it to the values; with two properties, it compares one to the other.
+	 *
+	 * @param criterion
+	 * @param operator
+	 * @param properties the referenced properties, or null if they are not known
+	 * @param values
+	 */
+	public SimpleCondition(Criterion criterion, String operator, String[] properties, Object[] values) {
 		this.criterion = criterion;
+		this.operator = operator;
+		this.properties = properties;
+		this.values = (values == null ? new Object[0] : values);
 	}
 
 	@Override
 	protected Criterion getCriterion() {
 		return criterion;
 	}
+
+	protected String getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Returns the property compared to a literal value, or null if this condition
+	 * does not compare a single property to a single literal value.
+	 */
+	protected String getComparedProperty() {
+		if (properties == null || properties.length != 1 || values.length != 1 || values[0] == null
+				|| values[0] instanceof Parameter) {
+			return null;
+		}
+		return properties[0];
+	}
+
+	protected Object[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns the referenced properties, or null if they are not known.
+	 */
+	protected String[] getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Detects the conditions whose value is known: empty IN and NOT IN lists, and
+	 * always false SQL markers.
+	 */
+	@Override
+	protected Condition optimize(boolean negated) {
+		if (properties == null) {
+			if (operator != null && FALSE_SQL.contains(operator.replaceAll("\\s", "").toLowerCase())) {
+				return ConstantCondition.FALSE;
+			}
+		} else if (values.length == 0 && "in".equals(operator)) {
+			return ConstantCondition.FALSE;
+		} else if (values.length == 0 && "not in".equals(operator)) {
+			return ConstantCondition.TRUE;
+		}
+		return this;
+	}
+
+	@Override
+	protected boolean references(String alias) {
+		if (properties == null) {
+			return true;
+		}
+		for (String property : properties) {
+			if (references(property, alias)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected void describe(CanonicalForm form) {
+		if (properties == null) {
+			form.append(operator != null ? operator : criterion.toString());
+		} else if (properties.length == 2) {
+			form.append(properties[0]).append(" ").append(operator).append(" ").append(properties[1]);
+		} else {
+			form.append(properties[0]).append(" ").append(operator);
+			if (values.length == 0 && operator.startsWith("is ")) {
+				return;
+			}
+			form.append(" ");
+			if (values.length == 1 && (values[0] instanceof Parameter || !operator.endsWith("in"))) {
+				form.value(values[0]);
+			} else {
+				form.values(values);
+			}
+		}
+	}
 }
@@ -0,0 +1,44 @@
+package br.com.witt.query;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link QueryInstrumentation Instrumentation} that passes the executions
+ * slower than a threshold to a hook, as a logger.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class SlowQueryLog implements QueryInstrumentation {
+
+	private volatile long thresholdNanos;
+	private Consumer<QueryExecution> hook;
+
+	/**
+	 * Creates the log of the executions that take at least the given time.
+	 *
+	 * @param threshold
+	 * @param unit the unit of the threshold
+	 * @param hook receives the slow executions
+	 */
+	public SlowQueryLog(long threshold, TimeUnit unit, Consumer<QueryExecution> hook) {
+		this.thresholdNanos = unit.toNanos(threshold);
+		this.hook = hook;
+	}
+
+	@Override
+	public void executed(QueryExecution execution) {
+		if (execution.getTotalNanos() >= thresholdNanos) {
+			hook.accept(execution);
+		}
+	}
+
+	public long getThreshold(TimeUnit unit) {
+		return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void setThreshold(long threshold, TimeUnit unit) {
+		this.thresholdNanos = unit.toNanos(threshold);
+	}
+}
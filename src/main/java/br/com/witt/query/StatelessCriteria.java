@@ -0,0 +1,35 @@
+package br.com.witt.query;
+
+import org.hibernate.Criteria;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.internal.CriteriaImpl;
+
+/**
+ * Detached criteria bound to a {@link StatelessSession} since its creation, as
+ * {@link DetachedCriteria#getExecutableCriteria(org.hibernate.Session)} only
+ * accepts stateful sessions.
+ *
+ * @author Luciano Witt
+ *
+ */
+class StatelessCriteria extends DetachedCriteria {
+
+	private static final long serialVersionUID = 1L;
+
+	private CriteriaImpl criteria;
+
+	StatelessCriteria(Class<?> entityClass, String alias, StatelessSession session) {
+		this(new CriteriaImpl(entityClass.getName(), alias, (SessionImplementor) session));
+	}
+
+	private StatelessCriteria(CriteriaImpl criteria) {
+		super(criteria, criteria);
+		this.criteria = criteria;
+	}
+
+	Criteria getExecutableCriteria() {
+		return criteria;
+	}
+}
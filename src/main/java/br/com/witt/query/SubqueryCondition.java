@@ -1,6 +1,14 @@
 package br.com.witt.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
 
 public class SubqueryCondition extends Condition {
@@ -51,58 +59,237 @@ public class SubqueryCondition extends Condition {
 		this(value, null, operator, subquery);
 	}
 
+	@Override
+	protected boolean references(String alias) {
+		return (property != null && references(property, alias)) || subquery.references(alias);
+	}
+
+	@Override
+	protected void describe(CanonicalForm form) {
+		if (property != null) {
+			form.append(property).append(" ");
+		} else if (value != null) {
+			form.value(value).append(" ");
+		}
+		form.append(operator.name()).append(" ").subquery(subquery);
+	}
+
+	/**
+	 * Detects the conditions whose value is known because the subquery is
+	 * provably empty: EXISTS and IN are false, NOT EXISTS and NOT IN are true.
+	 * Comparisons with an empty subquery are unknown, and are left as they are.
+	 * <p>
+	 * The EXISTS and NOT EXISTS conditions on a {@link Query#decorrelate()
+	 * decorrelated} subquery are rewritten as IN and NOT IN conditions.
+	 */
+	@Override
+	protected Condition optimize(boolean negated) {
+		if (!subquery.compile().isEmpty()) {
+			if (subquery.isDecorrelated() && (operator == SubqueryOperator.EXISTS
+					|| operator == SubqueryOperator.NOT_EXISTS)) {
+				return decorrelate(negated);
+			}
+			return this;
+		}
+		switch (operator) {
+		case EXISTS:
+		case PIN:
+			return ConstantCondition.FALSE;
+		case NOT_EXISTS:
+		case PNIN:
+			return ConstantCondition.TRUE;
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * Rewrites an EXISTS as "outer IN (SELECT inner ...)", and a NOT EXISTS as
+	 * "outer IS NULL OR outer NOT IN (SELECT inner ...)", where "inner = outer" is
+	 * the correlation of the subquery, which is removed from its where. The inner
+	 * nulls are removed from the subquery, as a single null makes a NOT IN
+	 * unknown.
+	 */
+	private Condition decorrelate(boolean negated) {
+		if (subquery.getWhere() == null || subquery.select().isAggregated()
+				|| (negated && operator == SubqueryOperator.EXISTS)) {
+			return this;
+		}
+		Condition where = subquery.getWhere().optimize(false);
+		List<Condition> conditions = new ArrayList<Condition>(
+				where instanceof And ? ((And) where).getConditions() : Collections.singletonList(where));
+
+		Set<String> aliases = new HashSet<String>();
+		aliases.add(subquery.getFromAlias());
+		for (Join join : subquery.getJoins()) {
+			aliases.add(join.getAlias());
+		}
+
+		String inner = null;
+		String outer = null;
+		for (Condition condition : conditions) {
+			if (condition instanceof SimpleCondition && "=".equals(((SimpleCondition) condition).getOperator())) {
+				String[] properties = ((SimpleCondition) condition).getProperties();
+				if (properties != null && properties.length == 2 && isInner(properties[0], aliases) != isInner(
+						properties[1], aliases) && isQualified(properties[0]) && isQualified(properties[1])) {
+					inner = (isInner(properties[0], aliases) ? properties[0] : properties[1]);
+					outer = (isInner(properties[0], aliases) ? properties[1] : properties[0]);
+					conditions.remove(condition);
+					break;
+				}
+			}
+		}
+		if (inner == null) {
+			return this;
+		}
+
+		Query rewritten = new Query().from(subquery.getFromClass(), subquery.getFromAlias());
+		rewritten.getJoins().addAll(subquery.getJoins());
+		rewritten.select().property(inner);
+		Where rewrittenWhere = rewritten.where();
+		for (Condition condition : conditions) {
+			rewrittenWhere.add(condition).and();
+		}
+		rewrittenWhere.add(nullCheck(Restrictions.isNotNull(inner), "is not null", inner));
+
+		if (operator == SubqueryOperator.EXISTS) {
+			return new SubqueryCondition(outer, SubqueryOperator.PIN, rewritten);
+		}
+		Or or = new Or(nullCheck(Restrictions.isNull(outer), "is null", outer));
+		or.addCondition(new SubqueryCondition(outer, SubqueryOperator.PNIN, rewritten));
+		return or;
+	}
+
+	private static boolean isInner(String property, Set<String> aliases) {
+		int dot = property.indexOf('.');
+		return dot < 0 || aliases.contains(property.substring(0, dot));
+	}
+
+	private static boolean isQualified(String property) {
+		return property.indexOf('.') > 0;
+	}
+
+	private static Condition nullCheck(Criterion criterion, String operator, String property) {
+		return new SimpleCondition(criterion, operator, new String[] { property }, null);
+	}
+
 	@Override
 	protected Criterion getCriterion() {
+		final QueryTemplate template = subquery.compile();
+		return new DeferredCriterion() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Criterion create() {
+				if (subquery.isMaterialized()) {
+					List<Object> values = ExecutionContext.getMaterialized(subquery);
+					if (values != null) {
+						Criterion criterion = createCriterion(values);
+						if (criterion != null) {
+							return criterion;
+						}
+					}
+				}
+				return createCriterion(template.createSubqueryCriteria());
+			}
+		};
+	}
+
+	/**
+	 * Creates the criterion on the values of a materialized subquery, or returns
+	 * null when it must run inline: the comparisons of values, and the
+	 * comparisons of properties with more than one value, that fail on the
+	 * database. No value is compared as null, so it is unknown, as in SQL.
+	 */
+	private Criterion createCriterion(List<Object> values) {
+		Object single = (values.isEmpty() ? null : values.get(0));
+
+		switch (operator) {
+		case EXISTS:
+			return Restrictions.sqlRestriction(values.isEmpty() ? "1=0" : "1=1");
+		case NOT_EXISTS:
+			return Restrictions.sqlRestriction(values.isEmpty() ? "1=1" : "1=0");
+		case PIN:
+			return new InExpression(property, InExpression.IN, values);
+		case PNIN:
+			return new InExpression(property, InExpression.NOT_IN, values);
+		default:
+			break;
+		}
+		if (property == null || values.size() > 1) {
+			return null;
+		}
+
+		switch (operator) {
+		case PEQ:
+			return Restrictions.eq(property, single);
+		case PNE:
+			return Restrictions.ne(property, single);
+		case PGT:
+			return Restrictions.gt(property, single);
+		case PGE:
+			return Restrictions.ge(property, single);
+		case PLT:
+			return Restrictions.lt(property, single);
+		case PLE:
+			return Restrictions.le(property, single);
+		default:
+			return null;
+		}
+	}
+
+	private Criterion createCriterion(DetachedCriteria criteria) {
 		Criterion criterion;
 
 		switch (operator) {
 		case EXISTS:
-			criterion = Subqueries.exists(subquery.getCriteria());
+			criterion = Subqueries.exists(criteria);
 			break;
 		case NOT_EXISTS:
-			criterion = Subqueries.notExists(subquery.getCriteria());
+			criterion = Subqueries.notExists(criteria);
 			break;
 		case EQ:
-			criterion = Subqueries.eq(value, subquery.getCriteria());
+			criterion = Subqueries.eq(value, criteria);
 			break;
 		case NE:
-			criterion = Subqueries.ne(value, subquery.getCriteria());
+			criterion = Subqueries.ne(value, criteria);
 			break;
 		case GT:
-			criterion = Subqueries.gt(value, subquery.getCriteria());
+			criterion = Subqueries.gt(value, criteria);
 			break;
 		case GE:
-			criterion = Subqueries.ge(value, subquery.getCriteria());
+			criterion = Subqueries.ge(value, criteria);
 			break;
 		case LT:
-			criterion = Subqueries.lt(value, subquery.getCriteria());
+			criterion = Subqueries.lt(value, criteria);
 			break;
 		case LE:
-			criterion = Subqueries.le(value, subquery.getCriteria());
+			criterion = Subqueries.le(value, criteria);
 			break;
 		case PEQ:
-			criterion = Subqueries.propertyEq(property, subquery.getCriteria());
+			criterion = Subqueries.propertyEq(property, criteria);
 			break;
 		case PNE:
-			criterion = Subqueries.propertyNe(property, subquery.getCriteria());
+			criterion = Subqueries.propertyNe(property, criteria);
 			break;
 		case PGT:
-			criterion = Subqueries.propertyGt(property, subquery.getCriteria());
+			criterion = Subqueries.propertyGt(property, criteria);
 			break;
 		case PGE:
-			criterion = Subqueries.propertyGe(property, subquery.getCriteria());
+			criterion = Subqueries.propertyGe(property, criteria);
 			break;
 		case PLT:
-			criterion = Subqueries.propertyLt(property, subquery.getCriteria());
+			criterion = Subqueries.propertyLt(property, criteria);
 			break;
 		case PLE:
-			criterion = Subqueries.propertyLe(property, subquery.getCriteria());
+			criterion = Subqueries.propertyLe(property, criteria);
 			break;
 		case PIN:
-			criterion = Subqueries.propertyIn(property, subquery.getCriteria());
+			criterion = Subqueries.propertyIn(property, criteria);
 			break;
 		case PNIN:
-			criterion = Subqueries.propertyNotIn(property, subquery.getCriteria());
+			criterion = Subqueries.propertyNotIn(property, criteria);
 			break;
 		default:
 			throw new RuntimeException("Unsupported subquery operator");
@@ -9,18 +9,34 @@ import org.hibernate.criterion.Restrictions;
 
 public class Where extends Condition {
 
+	private Query query;
 	private Where parentBlock;
 	private Condition condition;
 	private Stack<Boolean> enabled;
 	private boolean ended;
 
-	protected Where(Where parentBlock) {
+	protected Where(Query query, Where parentBlock) {
+		this.query = query;
 		this.parentBlock = parentBlock;
 		enabled = new Stack<Boolean>();
 		enabled.push(Boolean.TRUE);
 		ended = false;
 	}
 
+	@Override
+	protected boolean references(String alias) {
+		return condition != null && condition.references(alias);
+	}
+
+	@Override
+	protected void describe(CanonicalForm form) {
+		form.append("(");
+		if (condition != null) {
+			condition.describe(form);
+		}
+		form.append(")");
+	}
+
 	@Override
 	protected Criterion getCriterion() {
 		if (isEmpty() || (hasParent() && !isEnded())) {
@@ -29,6 +45,14 @@ public class Where extends Condition {
 		return condition.getCriterion();
 	}
 
+	@Override
+	protected Condition optimize(boolean negated) {
+		if (isEmpty() || (hasParent() && !isEnded())) {
+			throw new RuntimeException("Block is not ended");
+		}
+		return condition.optimize(negated);
+	}
+
 	private boolean hasParent() {
 		return parentBlock != null;
 	}
@@ -39,6 +63,7 @@ public class Where extends Condition {
 
 	private void end() {
 		ended = true;
+		query.modified();
 	}
 
 	private boolean isEnded() {
@@ -51,6 +76,7 @@ public class Where extends Condition {
 
 	private void addCondition(Condition condition) {
 		if (isEnabled()) {
+			query.modified();
 			if (isEmpty()) {
 				this.condition = condition;
 			} else if (this.condition instanceof BooleanOperator) {
@@ -70,9 +96,24 @@ public class Where extends Condition {
 		}
 	}
 
+	/**
+	 * Adds the given condition, already built.
+	 * 
+	 * @param condition
+	 * @return {@link Where}
+	 */
+	protected Where add(Condition condition) {
+		addCondition(condition);
+		return this;
+	}
+
+	private static Condition compare(Criterion criterion, String operator, String property, Object value) {
+		return new SimpleCondition(criterion, operator, new String[] { property }, new Object[] { value });
+	}
+
 	public Where blockBegin() {
 		if (isEnabled()) {
-			Where block = new Where(this);
+			Where block = new Where(query, this);
 			addCondition(block);
 			return block;
 		} else {
@@ -118,6 +159,7 @@ public class Where extends Condition {
 				} else if (!(condition instanceof And)) {
 					condition = new And(condition);
 				}
+				query.modified();
 			}
 			return this;
 		} else {
@@ -140,6 +182,7 @@ public class Where extends Condition {
 				} else if (!(condition instanceof Or)) {
 					condition = new Or(condition);
 				}
+				query.modified();
 			}
 			return this;
 		} else {
@@ -153,94 +196,133 @@ public class Where extends Condition {
 	}
 
 	public Where eq(String property, Object value) {
-		addCondition(new SimpleCondition(Restrictions.eq(property, value)));
+		if (value instanceof Parameter) {
+			addCondition(compare(new ParameterExpression(property, "=", (Parameter) value), "=", property, value));
+		} else {
+			addCondition(compare(Restrictions.eq(property, value), "=", property, value));
+		}
 		return this;
 	}
 
 	public Where ne(String property, Object value) {
-		addCondition(new SimpleCondition(Restrictions.ne(property, value)));
+		if (value instanceof Parameter) {
+			addCondition(compare(new ParameterExpression(property, "<>", (Parameter) value), "<>", property, value));
+		} else {
+			addCondition(compare(Restrictions.ne(property, value), "<>", property, value));
+		}
 		return this;
 	}
 
 	public Where gt(String property, Object value) {
-		addCondition(new SimpleCondition(Restrictions.gt(property, value)));
+		if (value instanceof Parameter) {
+			addCondition(compare(new ParameterExpression(property, ">", (Parameter) value), ">", property, value));
+		} else {
+			addCondition(compare(Restrictions.gt(property, value), ">", property, value));
+		}
 		return this;
 	}
 
 	public Where ge(String property, Object value) {
-		addCondition(new SimpleCondition(Restrictions.ge(property, value)));
+		if (value instanceof Parameter) {
+			addCondition(compare(new ParameterExpression(property, ">=", (Parameter) value), ">=", property, value));
+		} else {
+			addCondition(compare(Restrictions.ge(property, value), ">=", property, value));
+		}
 		return this;
 	}
 
 	public Where lt(String property, Object value) {
-		addCondition(new SimpleCondition(Restrictions.lt(property, value)));
+		if (value instanceof Parameter) {
+			addCondition(compare(new ParameterExpression(property, "<", (Parameter) value), "<", property, value));
+		} else {
+			addCondition(compare(Restrictions.lt(property, value), "<", property, value));
+		}
 		return this;
 	}
 
 	public Where le(String property, Object value) {
-		addCondition(new SimpleCondition(Restrictions.le(property, value)));
+		if (value instanceof Parameter) {
+			addCondition(compare(new ParameterExpression(property, "<=", (Parameter) value), "<=", property, value));
+		} else {
+			addCondition(compare(Restrictions.le(property, value), "<=", property, value));
+		}
 		return this;
 	}
 
 	public Where like(String property, String value) {
 		if (value != null) {
-			addCondition(new SimpleCondition(Restrictions.ilike(property, value, MatchMode.ANYWHERE)));
+			addCondition(compare(Restrictions.ilike(property, value, MatchMode.ANYWHERE), "like", property, value));
 		}
 		return this;
 	}
 
+	public Where like(String property, Parameter parameter) {
+		addCondition(compare(new ParameterExpression(property, ParameterExpression.LIKE, parameter), "like", property, parameter));
+		return this;
+	}
+
 	public Where sql(String sql) {
-		addCondition(new SimpleCondition(Restrictions.sqlRestriction(sql)));
+		addCondition(new SimpleCondition(Restrictions.sqlRestriction(sql), "sql(" + sql + ")", null, null));
 		return this;
 	}
 
 	public Where in(String property, Object... values) {
-		addCondition(new SimpleCondition(Restrictions.in(property, values)));
+		addCondition(new SimpleCondition(new InExpression(property, InExpression.IN, values), "in", new String[] { property },
+				values));
 		return this;
 	}
 
 	public Where in(String property, Collection<Object> values) {
-		addCondition(new SimpleCondition(Restrictions.in(property, values)));
+		return in(property, values.toArray());
+	}
+
+	public Where in(String property, Parameter parameter) {
+		addCondition(compare(new InExpression(property, InExpression.IN, parameter), "in", property, parameter));
 		return this;
 	}
 
 	public Where notIn(String property, Object... values) {
-		addCondition(new SimpleCondition(Restrictions.not(Restrictions.in(property, values))));
+		addCondition(new SimpleCondition(new InExpression(property, InExpression.NOT_IN, values), "not in",
+				new String[] { property }, values));
 		return this;
 	}
 
 	public Where notIn(String property, Collection<Object> values) {
-		addCondition(new SimpleCondition(Restrictions.not(Restrictions.in(property, values))));
+		return notIn(property, values.toArray());
+	}
+
+	public Where notIn(String property, Parameter parameter) {
+		addCondition(compare(new InExpression(property, InExpression.NOT_IN, parameter), "not in", property, parameter));
 		return this;
 	}
 
 	public Where peq(String property1, String property2) {
-		addCondition(new SimpleCondition(Restrictions.eqProperty(property1, property2)));
+		addCondition(new SimpleCondition(Restrictions.eqProperty(property1, property2), "=", new String[] { property1, property2 }, null));
 		return this;
 	}
 
 	public Where pne(String property1, String property2) {
-		addCondition(new SimpleCondition(Restrictions.neProperty(property1, property2)));
+		addCondition(new SimpleCondition(Restrictions.neProperty(property1, property2), "<>", new String[] { property1, property2 }, null));
 		return this;
 	}
 
 	public Where pgt(String property1, String property2) {
-		addCondition(new SimpleCondition(Restrictions.gtProperty(property1, property2)));
+		addCondition(new SimpleCondition(Restrictions.gtProperty(property1, property2), ">", new String[] { property1, property2 }, null));
 		return this;
 	}
 
 	public Where pge(String property1, String property2) {
-		addCondition(new SimpleCondition(Restrictions.geProperty(property1, property2)));
+		addCondition(new SimpleCondition(Restrictions.geProperty(property1, property2), ">=", new String[] { property1, property2 }, null));
 		return this;
 	}
 
 	public Where plt(String property1, String property2) {
-		addCondition(new SimpleCondition(Restrictions.ltProperty(property1, property2)));
+		addCondition(new SimpleCondition(Restrictions.ltProperty(property1, property2), "<", new String[] { property1, property2 }, null));
 		return this;
 	}
 
 	public Where ple(String property1, String property2) {
-		addCondition(new SimpleCondition(Restrictions.leProperty(property1, property2)));
+		addCondition(new SimpleCondition(Restrictions.leProperty(property1, property2), "<=", new String[] { property1, property2 }, null));
 		return this;
 	}
 
@@ -0,0 +1,217 @@
+package br.com.witt.query.pagination;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Encodes the key of the last row of a page into an opaque continuation token,
+ * and back. Only plain value types are supported, so a token received from a
+ * client never instantiates arbitrary classes: enums are kept by the names of
+ * their class and constant, and are only resolved to enum constants, and the
+ * {@link LocalDate} and {@link Instant} values by their epoch values. The token
+ * carries the {@link br.com.witt.query.QueryFingerprint#getShapeHash() shape
+ * hash} of the query, so it is rejected by a query of another shape or keyset.
+ *
+ * @author Luciano Witt
+ *
+ */
+class ContinuationToken {
+
+	private static final int VERSION = 2;
+
+	private ContinuationToken() {
+	}
+
+	static String encode(long shapeHash, Object[] key) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(VERSION);
+			out.writeLong(shapeHash);
+			out.writeShort(key.length);
+			for (Object value : key) {
+				write(out, value);
+			}
+			out.flush();
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new RuntimeException("Could not encode the continuation token", e);
+		}
+	}
+
+	static Object[] decode(long shapeHash, String token) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+			if (in.readByte() != VERSION) {
+				throw new RuntimeException("Invalid continuation token");
+			}
+			if (in.readLong() != shapeHash) {
+				throw new RuntimeException("Continuation token does not match the query");
+			}
+			int length = in.readShort();
+			if (length < 0) {
+				throw new RuntimeException("Invalid continuation token");
+			}
+			Object[] key = new Object[length];
+			for (int i = 0; i < key.length; i++) {
+				key[i] = read(in);
+			}
+			if (in.available() > 0) {
+				throw new RuntimeException("Invalid continuation token");
+			}
+			return key;
+		} catch (IOException e) {
+			throw new RuntimeException("Invalid continuation token", e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException("Invalid continuation token", e);
+		}
+	}
+
+	private static void write(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte('N');
+		} else if (value instanceof String) {
+			out.writeByte('S');
+			out.writeUTF((String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte('I');
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte('J');
+			out.writeLong((Long) value);
+		} else if (value instanceof Short) {
+			out.writeByte('H');
+			out.writeShort((Short) value);
+		} else if (value instanceof Byte) {
+			out.writeByte('B');
+			out.writeByte((Byte) value);
+		} else if (value instanceof Double) {
+			out.writeByte('D');
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte('F');
+			out.writeFloat((Float) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte('Z');
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Character) {
+			out.writeByte('C');
+			out.writeChar((Character) value);
+		} else if (value instanceof BigDecimal) {
+			out.writeByte('d');
+			out.writeUTF(value.toString());
+		} else if (value instanceof BigInteger) {
+			out.writeByte('i');
+			out.writeUTF(value.toString());
+		} else if (value instanceof UUID) {
+			out.writeByte('U');
+			out.writeLong(((UUID) value).getMostSignificantBits());
+			out.writeLong(((UUID) value).getLeastSignificantBits());
+		} else if (value instanceof Timestamp) {
+			out.writeByte('t');
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		} else if (value instanceof java.sql.Date) {
+			out.writeByte('s');
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Date) {
+			out.writeByte('T');
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof LocalDate) {
+			out.writeByte('L');
+			out.writeLong(((LocalDate) value).toEpochDay());
+		} else if (value instanceof Instant) {
+			out.writeByte('O');
+			out.writeLong(((Instant) value).getEpochSecond());
+			out.writeInt(((Instant) value).getNano());
+		} else if (value instanceof Enum) {
+			out.writeByte('E');
+			out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+			out.writeUTF(((Enum<?>) value).name());
+		} else {
+			throw new RuntimeException("Unsupported keyset value type: " + value.getClass().getName());
+		}
+	}
+
+	private static Object read(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case 'N':
+			return null;
+		case 'S':
+			return in.readUTF();
+		case 'I':
+			return in.readInt();
+		case 'J':
+			return in.readLong();
+		case 'H':
+			return in.readShort();
+		case 'B':
+			return in.readByte();
+		case 'D':
+			return in.readDouble();
+		case 'F':
+			return in.readFloat();
+		case 'Z':
+			return in.readBoolean();
+		case 'C':
+			return in.readChar();
+		case 'd':
+			return new BigDecimal(in.readUTF());
+		case 'i':
+			return new BigInteger(in.readUTF());
+		case 'U':
+			return new UUID(in.readLong(), in.readLong());
+		case 't':
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		case 's':
+			return new java.sql.Date(in.readLong());
+		case 'T':
+			return new Date(in.readLong());
+		case 'L':
+			return LocalDate.ofEpochDay(in.readLong());
+		case 'O':
+			return Instant.ofEpochSecond(in.readLong(), in.readInt());
+		case 'E':
+			return readEnum(in.readUTF(), in.readUTF());
+		default:
+			throw new RuntimeException("Invalid continuation token");
+		}
+	}
+
+	/**
+	 * Resolves an enum constant by the names of its class and of the constant.
+	 * The class is loaded, without being initialized, by the context class
+	 * loader, and is rejected unless it is an enum.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object readEnum(String className, String name) {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if (loader == null) {
+			loader = ContinuationToken.class.getClassLoader();
+		}
+		Class<?> type;
+		try {
+			type = Class.forName(className, false, loader);
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException("Invalid continuation token", e);
+		}
+		if (!type.isEnum()) {
+			throw new RuntimeException("Invalid continuation token");
+		}
+		return Enum.valueOf((Class) type, name);
+	}
+}
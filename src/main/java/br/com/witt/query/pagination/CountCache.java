@@ -0,0 +1,25 @@
+package br.com.witt.query.pagination;
+
+import br.com.witt.query.EntityCache;
+
+/**
+ * Cache of the row counts of the paginated searches, so users flipping through
+ * the pages of the same search do not run the same count on every page.
+ * <p>
+ * The counts are only invalidated by the
+ * {@link br.com.witt.query.EntityCacheInvalidator EntityCacheInvalidator}, on
+ * the changes made through the Hibernate sessions of this JVM. Bulk HQL or
+ * native SQL updates, and the changes made by other JVMs or applications, are
+ * not seen: the cached counts stay until their time to live expires, or until
+ * the cache is {@link #clear() cleared}.
+ *
+ * @see LruCountCache
+ * @see br.com.witt.query.EntityCacheInvalidator
+ * @see PaginationSearch#execute(br.com.witt.query.Query, PaginationParameters,
+ *      org.hibernate.Session, CountCache)
+ *
+ * @author Luciano Witt
+ *
+ */
+public interface CountCache extends EntityCache<Long> {
+}
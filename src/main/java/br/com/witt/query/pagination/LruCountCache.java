@@ -0,0 +1,23 @@
+package br.com.witt.query.pagination;
+
+import br.com.witt.query.LruEntityCache;
+
+/**
+ * In-memory {@link CountCache}, bounded in size, that evicts the least recently
+ * used counts and expires the counts after a time to live.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class LruCountCache extends LruEntityCache<Long> implements CountCache {
+
+	/**
+	 * Creates a count cache.
+	 *
+	 * @param maxSize the maximum number of cached counts
+	 * @param timeToLive the time, in milliseconds, a count stays in the cache
+	 */
+	public LruCountCache(int maxSize, long timeToLive) {
+		super(maxSize, timeToLive);
+	}
+}
@@ -4,12 +4,19 @@ public abstract class PaginationParameters {
 
 	private Integer pageNumber;
 	private Integer pageSize;
+	private String continuation;
+	private Long countLimit;
 
 	protected PaginationParameters() {
 		this(null, null);
 	}
 
 	protected PaginationParameters(Integer pageNumber, Integer pageSize) {
+		this(pageNumber, pageSize, null);
+	}
+
+	protected PaginationParameters(Integer pageNumber, Integer pageSize, String continuation) {
+		this.continuation = continuation;
 		this.pageNumber = (pageNumber == null ? 1 : pageNumber);
 		this.pageSize = (pageSize == null ? 10 : pageSize);
 		if (this.pageSize > 1000) {
@@ -25,6 +32,31 @@ public abstract class PaginationParameters {
 		return pageSize;
 	}
 
+	/**
+	 * The continuation token returned with the previous page, used by the keyset
+	 * pagination. Null for the first page.
+	 * 
+	 * @return the continuation token
+	 */
+	public String getContinuation() {
+		return continuation;
+	}
+
+	/**
+	 * The limit of the row count. When set, the row count stops at this limit,
+	 * and a result equal to it means "at least" this number of rows. Null for an
+	 * exact count.
+	 * 
+	 * @return the count limit
+	 */
+	public Long getCountLimit() {
+		return countLimit;
+	}
+
+	protected void setCountLimit(Long countLimit) {
+		this.countLimit = countLimit;
+	}
+
 	public boolean isValid() {
 		return pageNumber > 0 && pageSize > 0;
 	}
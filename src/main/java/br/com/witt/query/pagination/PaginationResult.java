@@ -9,11 +9,14 @@ public class PaginationResult {
 	private Integer pageSize;
 	private Long rowCount;
 	private List<Object> pageRows;
+	private String continuation;
+	private boolean rowCountExact;
 
 	public PaginationResult(Integer pageNumber, Integer pageSize, Long rowCount) {
 		this.pageNumber = pageNumber;
 		this.pageSize = pageSize;
 		this.rowCount = rowCount;
+		this.rowCountExact = true;
 		this.pageRows = new ArrayList<Object>();
 	}
 
@@ -29,6 +32,20 @@ public class PaginationResult {
 		return rowCount;
 	}
 
+	/**
+	 * Tells if the row count is exact. When it is not, the row count is an
+	 * estimate: the search returns at least this number of rows.
+	 * 
+	 * @return true if the row count is exact
+	 */
+	public boolean isRowCountExact() {
+		return rowCountExact;
+	}
+
+	public void setRowCountExact(boolean rowCountExact) {
+		this.rowCountExact = rowCountExact;
+	}
+
 	public List<Object> getPageRows() {
 		return pageRows;
 	}
@@ -36,4 +53,19 @@ public class PaginationResult {
 	public void setPageRows(List<Object> pageRows) {
 		this.pageRows = pageRows;
 	}
+
+	/**
+	 * The token to be passed in the {@link PaginationParameters parameters} to
+	 * fetch the next page with the keyset pagination. Null when there are no more
+	 * pages.
+	 * 
+	 * @return the continuation token
+	 */
+	public String getContinuation() {
+		return continuation;
+	}
+
+	public void setContinuation(String continuation) {
+		this.continuation = continuation;
+	}
 }
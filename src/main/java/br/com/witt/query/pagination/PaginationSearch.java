@@ -1,21 +1,241 @@
 package br.com.witt.query.pagination;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 
+import br.com.witt.query.EntityCacheInvalidator;
 import br.com.witt.query.Query;
+import br.com.witt.query.QueryExecution;
+import br.com.witt.query.QueryInstrumentation;
+import br.com.witt.query.QueryTemplate;
 
 public class PaginationSearch {
 
+	/**
+	 * Executes the paginated search. When the query has a
+	 * {@link Query#keyset() keyset}, the page is fetched with keyset pagination,
+	 * starting after the {@link PaginationParameters#getContinuation()
+	 * continuation token}, and the result carries the token for the next page.
+	 * Otherwise, the page is fetched by its number.
+	 * <p>
+	 * A {@link QueryTemplate#isEmpty() provably empty} query is neither counted
+	 * nor fetched.
+	 * <p>
+	 * The search is reported to the {@link QueryInstrumentation installed
+	 * instrumentation} as a "pagination", whose execution phase is the row count
+	 * and whose fetch phase is the page fetch, besides the reports of the count
+	 * and of the fetch themselves.
+	 *
+	 * @param query the query
+	 * @param params the pagination parameters
+	 * @param session the Hibernate session
+	 * @return the {@link PaginationResult result} of the page
+	 */
 	public static PaginationResult execute(Query query, PaginationParameters params, Session session) throws Exception {
+		return execute(query, params, session, null);
+	}
+
+	/**
+	 * Executes the paginated search, reading the row count from the given cache
+	 * when the same search was counted before.
+	 *
+	 * @param query the query
+	 * @param params the pagination parameters
+	 * @param session the Hibernate session
+	 * @param cache the row count cache, or null to always count
+	 * @return the {@link PaginationResult result} of the page
+	 * @see #execute(Query, PaginationParameters, Session)
+	 */
+	public static PaginationResult execute(Query query, PaginationParameters params, Session session, CountCache cache)
+			throws Exception {
+
+		boolean instrumented = QueryInstrumentation.isEnabled();
+		long start = (instrumented ? System.nanoTime() : 0L);
+
+		QueryTemplate template = query.compile();
+		if (template.isEmpty()) {
+			return emptyResult(params);
+		}
+		long built = (instrumented ? System.nanoTime() : 0L);
+		long counted = 0L;
+		PaginationResult result = null;
+		boolean failed = true;
+		try {
+			Long totalRows = rowCount(template, params, session, cache);
+			counted = (instrumented ? System.nanoTime() : 0L);
+
+			result = new PaginationResult(params.getPageNumber(), params.getPageSize(), totalRows);
+			result.setRowCountExact(isExact(totalRows, params));
+
+			if (totalRows > 0L) {
+				fetchPage(template, params, session, result);
+			}
+			failed = false;
+			return result;
+		} finally {
+			if (instrumented) {
+				long end = System.nanoTime();
+				long countedAt = (counted == 0L ? end : counted);
+				int rows = (result == null || result.getPageRows() == null ? 0 : result.getPageRows().size());
+				QueryInstrumentation.installed().executed(new QueryExecution("pagination", template.getFingerprint(),
+						built - start, countedAt - built, end - countedAt, rows, failed));
+			}
+		}
+	}
+
+	/**
+	 * Executes the paginated search asynchronously, running the row count and the
+	 * page fetch at the same time, each one on its own session opened from the
+	 * given session factory and on a thread of the given executor.
+	 *
+	 * @param query the query
+	 * @param params the pagination parameters
+	 * @param sessionFactory the Hibernate session factory
+	 * @param executor the executor of the count and the page fetch
+	 * @return the future {@link PaginationResult result} of the page
+	 */
+	public static CompletableFuture<PaginationResult> executeAsync(Query query, PaginationParameters params,
+			SessionFactory sessionFactory, Executor executor) {
+		return executeAsync(query, params, sessionFactory, executor, false);
+	}
+
+	/**
+	 * Executes the paginated search asynchronously, on sessions opened from the
+	 * given session factory and on threads of the given executor.
+	 * <p>
+	 * Without the optimistic mode, the row count and the page fetch run at the
+	 * same time. In the optimistic mode the page is fetched first, and the row
+	 * count is skipped when it can be deduced from the page, that is, when the
+	 * page is shorter than the page size.
+	 *
+	 * @param query the query
+	 * @param params the pagination parameters
+	 * @param sessionFactory the Hibernate session factory
+	 * @param executor the executor of the count and the page fetch
+	 * @param optimistic if the count can be skipped on short pages
+	 * @return the future {@link PaginationResult result} of the page
+	 */
+	public static CompletableFuture<PaginationResult> executeAsync(Query query, final PaginationParameters params,
+			final SessionFactory sessionFactory, final Executor executor, boolean optimistic) {
+
+		final QueryTemplate template = query.compile();
+		if (template.isEmpty()) {
+			return CompletableFuture.completedFuture(emptyResult(params));
+		}
+
+		CompletableFuture<PaginationResult> page = CompletableFuture.supplyAsync(() -> {
+			Session session = sessionFactory.openSession();
+			try {
+				PaginationResult result = new PaginationResult(params.getPageNumber(), params.getPageSize(), null);
+				fetchPage(template, params, session, result);
+				return result;
+			} finally {
+				session.close();
+			}
+		}, executor);
+
+		if (!optimistic) {
+			CompletableFuture<Long> count = CompletableFuture.supplyAsync(() -> rowCount(template, params, sessionFactory),
+					executor);
+			return page.thenCombine(count, (result, totalRows) -> withRowCount(result, totalRows, params));
+		}
+
+		return page.thenCompose(result -> {
+			Long totalRows = deduceRowCount(template, result, params);
+			if (totalRows != null) {
+				return CompletableFuture.completedFuture(withRowCount(result, totalRows, params));
+			}
+			return CompletableFuture.supplyAsync(
+					() -> withRowCount(result, rowCount(template, params, sessionFactory), params), executor);
+		});
+	}
+
+	private static PaginationResult emptyResult(PaginationParameters params) {
+		return new PaginationResult(params.getPageNumber(), params.getPageSize(), 0L);
+	}
+
+	private static void fetchPage(QueryTemplate template, PaginationParameters params, Session session,
+			PaginationResult result) {
+		if (template.hasKeyset()) {
+			long shapeHash = template.getFingerprint().getShapeHash();
+			Object[] after = (params.getContinuation() == null ? null
+					: ContinuationToken.decode(shapeHash, params.getContinuation()));
+			List<Object> rows = template.getPage(after, params.getPageSize(), session);
+			result.setPageRows(rows);
+			if (rows.size() == params.getPageSize()) {
+				Object[] key = template.getKey(rows.get(rows.size() - 1), session);
+				result.setContinuation(ContinuationToken.encode(shapeHash, key));
+			}
+		} else {
+			result.setPageRows(template.getPage(params.getPageNumber(), params.getPageSize(), session));
+		}
+	}
 
-		Long totalRows = query.rowCount(session);
+	private static Long rowCount(QueryTemplate template, PaginationParameters params, SessionFactory sessionFactory) {
+		Session session = sessionFactory.openSession();
+		try {
+			return rowCount(template, params, session, null);
+		} finally {
+			session.close();
+		}
+	}
 
-		PaginationResult result = new PaginationResult(params.getPageNumber(), params.getPageSize(), totalRows);
+	private static Long rowCount(QueryTemplate template, PaginationParameters params, Session session,
+			CountCache cache) {
+		Object key = null;
+		if (cache != null) {
+			key = Arrays.asList(template.getCacheKey(), params.getCountLimit());
+			Long totalRows = cache.get(key);
+			if (totalRows != null) {
+				return totalRows;
+			}
+		}
 
-		if (totalRows > 0L) {
-			result.setPageRows(query.getPage(params.getPageNumber(), params.getPageSize(), session));
+		Long totalRows;
+		if (params.getCountLimit() == null) {
+			totalRows = template.rowCount(session);
+		} else {
+			totalRows = template.rowCount(session, params.getCountLimit());
 		}
 
+		if (cache != null && !EntityCacheInvalidator.hasUncommittedWrites(session)) {
+			cache.put(key, template.getEntityClasses(session.getSessionFactory()), totalRows);
+		}
+		return totalRows;
+	}
+
+	private static boolean isExact(Long totalRows, PaginationParameters params) {
+		return params.getCountLimit() == null || totalRows < params.getCountLimit();
+	}
+
+	/**
+	 * Deduces the row count from a page shorter than the page size, which must be
+	 * the last one. Returns null when the count can not be deduced.
+	 */
+	private static Long deduceRowCount(QueryTemplate template, PaginationResult result, PaginationParameters params) {
+		int rows = result.getPageRows().size();
+		if (rows >= params.getPageSize()) {
+			return null;
+		}
+		if (template.hasKeyset()) {
+			return (params.getContinuation() == null ? Long.valueOf(rows) : null);
+		}
+		if (rows > 0 || params.getPageNumber() == 1) {
+			return Long.valueOf(((long) (params.getPageNumber() - 1) * params.getPageSize()) + rows);
+		}
+		return null;
+	}
+
+	private static PaginationResult withRowCount(PaginationResult page, Long totalRows, PaginationParameters params) {
+		PaginationResult result = new PaginationResult(page.getPageNumber(), page.getPageSize(), totalRows);
+		result.setRowCountExact(isExact(totalRows, params));
+		result.setPageRows(page.getPageRows());
+		result.setContinuation(page.getContinuation());
 		return result;
 	}
 }
@@ -0,0 +1,158 @@
+package br.com.witt.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.hibernate.criterion.Restrictions;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Condition#optimize(boolean) optimization} of the where
+ * conditions.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class ConditionOptimizeTest {
+
+	@Test
+	public void emptyInListsAreConstant() {
+		assertSame(ConstantCondition.FALSE, in("a").optimize(false));
+		assertSame(ConstantCondition.TRUE, notIn("a").optimize(false));
+		assertSame(ConstantCondition.FALSE, in("a").optimize(true));
+	}
+
+	@Test
+	public void falseSqlMarkersAreFalse() {
+		assertSame(ConstantCondition.FALSE, sql("1 = 0").optimize(false));
+		assertSame(ConstantCondition.FALSE, sql("FALSE").optimize(false));
+
+		SimpleCondition other = sql("a = 1");
+		assertSame(other, other.optimize(false));
+	}
+
+	@Test
+	public void andFlattensNestedConjunctionsAndRemovesDuplicates() {
+		And nested = and(eq("b", 2L), eq("a", 1L));
+		Condition optimized = and(eq("a", 1L), nested).optimize(false);
+
+		assertTrue(optimized instanceof And);
+		assertEquals(2, ((And) optimized).getConditions().size());
+	}
+
+	@Test
+	public void andDropsTrueConditions() {
+		SimpleCondition equality = eq("a", 1L);
+		assertSame(equality, and(notIn("b"), equality).optimize(false));
+	}
+
+	@Test
+	public void andWithFalseConditionIsFalse() {
+		assertSame(ConstantCondition.FALSE, and(eq("a", 1L), in("b")).optimize(false));
+	}
+
+	@Test
+	public void andOfDifferentIntegralValuesIsFalse() {
+		assertSame(ConstantCondition.FALSE, and(eq("a", 1L), eq("a", 2L)).optimize(false));
+	}
+
+	@Test
+	public void andOfDifferentStringsIsKept() {
+		Condition optimized = and(eq("a", "x"), eq("a", "X")).optimize(false);
+
+		assertTrue(optimized instanceof And);
+		assertEquals(2, ((And) optimized).getConditions().size());
+	}
+
+	@Test
+	public void andUnderNotIsNotTakenAsFalse() {
+		assertTrue(and(eq("a", 1L), eq("a", 2L)).optimize(true) instanceof And);
+	}
+
+	@Test
+	public void orFoldsEqualitiesIntoIn() {
+		Condition optimized = or(eq("a", 1L), eq("b", 3L), eq("a", 2L)).optimize(false);
+
+		assertTrue(optimized instanceof Or);
+		Or or = (Or) optimized;
+		assertEquals(2, or.getConditions().size());
+		SimpleCondition in = (SimpleCondition) or.getConditions().get(0);
+		assertEquals("in", in.getOperator());
+		assertArrayEquals(new Object[] { 1L, 2L }, in.getValues());
+		assertEquals("=", ((SimpleCondition) or.getConditions().get(1)).getOperator());
+	}
+
+	@Test
+	public void orWithTrueConditionIsTrue() {
+		assertSame(ConstantCondition.TRUE, or(eq("a", 1L), notIn("b")).optimize(false));
+	}
+
+	@Test
+	public void orDropsFalseConditions() {
+		SimpleCondition equality = eq("a", 1L);
+		assertSame(equality, or(in("b"), equality).optimize(false));
+		assertSame(ConstantCondition.FALSE, or(in("a"), in("b")).optimize(false));
+	}
+
+	@Test
+	public void notOfConstantIsNegated() {
+		assertSame(ConstantCondition.TRUE, not(in("a")).optimize(false));
+		assertSame(ConstantCondition.FALSE, not(notIn("a")).optimize(false));
+	}
+
+	@Test
+	public void doubleNegationIsRemoved() {
+		SimpleCondition equality = eq("a", 1L);
+		assertSame(equality, not(not(equality)).optimize(false));
+	}
+
+	@Test
+	public void notOptimizesItsConditionAsNegated() {
+		Condition optimized = not(and(eq("a", 1L), eq("a", 2L))).optimize(false);
+
+		assertTrue(optimized instanceof Not);
+	}
+
+	private static SimpleCondition eq(String property, Object value) {
+		return new SimpleCondition(Restrictions.eq(property, value), "=", new String[] { property },
+				new Object[] { value });
+	}
+
+	private static SimpleCondition in(String property, Object... values) {
+		return new SimpleCondition(new InExpression(property, InExpression.IN, values), "in",
+				new String[] { property }, values);
+	}
+
+	private static SimpleCondition notIn(String property, Object... values) {
+		return new SimpleCondition(new InExpression(property, InExpression.NOT_IN, values), "not in",
+				new String[] { property }, values);
+	}
+
+	private static SimpleCondition sql(String sql) {
+		return new SimpleCondition(Restrictions.sqlRestriction(sql), "sql(" + sql + ")", null, null);
+	}
+
+	private static And and(Condition... conditions) {
+		And and = new And(conditions[0]);
+		for (int i = 1; i < conditions.length; i++) {
+			and.addCondition(conditions[i]);
+		}
+		return and;
+	}
+
+	private static Or or(Condition... conditions) {
+		Or or = new Or(conditions[0]);
+		for (int i = 1; i < conditions.length; i++) {
+			or.addCondition(conditions[i]);
+		}
+		return or;
+	}
+
+	private static Not not(Condition condition) {
+		Not not = new Not();
+		not.setConditionToNegate(condition);
+		return not;
+	}
+}
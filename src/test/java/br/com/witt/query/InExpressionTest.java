@@ -0,0 +1,123 @@
+package br.com.witt.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.engine.spi.TypedValue;
+import org.hibernate.type.LongType;
+import org.junit.Test;
+
+/**
+ * Tests the SQL rendered by {@link InExpression}.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class InExpressionTest {
+
+	@Test
+	public void emptyListsAreConstant() {
+		assertEquals("1=0", render(InExpression.IN, new Object[0], "a_"));
+		assertEquals("1=1", render(InExpression.NOT_IN, new Object[0], "a_"));
+	}
+
+	@Test
+	public void singleValueIsNotPadded() {
+		assertEquals("a_ in (?)", render(InExpression.IN, new Object[] { 1L }, "a_"));
+	}
+
+	@Test
+	public void listIsPaddedToPowerOfTwoWithLastValue() {
+		InExpression expression = new InExpression("a", InExpression.IN, new Object[] { 1L, 2L, 3L });
+
+		assertEquals("a_ in (?, ?, ?, ?)", expression.toSqlString(null, criteriaQuery("a_")));
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 3L), values(expression.getTypedValues(null, criteriaQuery("a_"))));
+	}
+
+	@Test
+	public void longListsAreSplitIntoChunks() {
+		Object[] values = longs(InExpression.CHUNK_SIZE + 100);
+
+		assertEquals("(a_ in (" + placeholders(InExpression.CHUNK_SIZE) + ") or a_ in (" + placeholders(128) + "))",
+				render(InExpression.IN, values, "a_"));
+		assertEquals("(a_ not in (" + placeholders(InExpression.CHUNK_SIZE) + ") and a_ not in (" + placeholders(128)
+				+ "))", render(InExpression.NOT_IN, values, "a_"));
+
+		InExpression expression = new InExpression("a", InExpression.IN, values);
+		List<Object> typedValues = values(expression.getTypedValues(null, criteriaQuery("a_")));
+		assertEquals(InExpression.CHUNK_SIZE + 128, typedValues.size());
+		assertEquals(values[values.length - 1], typedValues.get(typedValues.size() - 1));
+	}
+
+	@Test
+	public void compositeColumnsAreRenderedAsTuples() {
+		assertEquals("(a1_, a2_) in ((?, ?), (?, ?))", render(InExpression.IN, new Object[] { 1L, 2L }, "a1_", "a2_"));
+	}
+
+	@Test
+	public void parameterValuesAreReadOnExecution() {
+		InExpression expression = new InExpression("a", InExpression.IN, Parameter.param("ids"));
+		ExecutionContext context = ExecutionContext.open(Collections.<String, Object>singletonMap("ids",
+				Arrays.asList(1L, 2L)));
+		try {
+			assertEquals("a_ in (?, ?)", expression.toSqlString(null, criteriaQuery("a_")));
+		} finally {
+			context.close();
+		}
+	}
+
+	private static String render(String op, Object[] values, String... columns) {
+		return new InExpression("a", op, values).toSqlString(null, criteriaQuery(columns));
+	}
+
+	private static Object[] longs(int length) {
+		Object[] values = new Object[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = (long) i;
+		}
+		return values;
+	}
+
+	private static String placeholders(int length) {
+		StringBuilder placeholders = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			placeholders.append(i == 0 ? "?" : ", ?");
+		}
+		return placeholders.toString();
+	}
+
+	private static List<Object> values(TypedValue[] typedValues) {
+		List<Object> values = new ArrayList<Object>();
+		for (TypedValue typedValue : typedValues) {
+			values.add(typedValue.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * Creates a criteria query that maps every property to the given columns.
+	 */
+	private static CriteriaQuery criteriaQuery(final String... columns) {
+		return (CriteriaQuery) Proxy.newProxyInstance(CriteriaQuery.class.getClassLoader(),
+				new Class<?>[] { CriteriaQuery.class }, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("findColumns")) {
+							return columns;
+						} else if (method.getName().equals("getTypedValue")) {
+							return new TypedValue(LongType.INSTANCE, args[2]);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
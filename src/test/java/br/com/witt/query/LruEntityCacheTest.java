@@ -0,0 +1,102 @@
+package br.com.witt.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the eviction, expiration and invalidation of {@link LruEntityCache}.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class LruEntityCacheTest {
+
+	private static final Set<Class<?>> NUMBERS = Collections.<Class<?>>singleton(Number.class);
+	private static final Set<Class<?>> STRINGS = Collections.<Class<?>>singleton(String.class);
+
+	@Test
+	public void leastRecentlyUsedValueIsEvicted() {
+		LruEntityCache<String> cache = new LruEntityCache<String>(2, 60000);
+		cache.put("a", NUMBERS, "1");
+		cache.put("b", NUMBERS, "2");
+		cache.get("a");
+		cache.put("c", NUMBERS, "3");
+
+		assertEquals("1", cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("3", cache.get("c"));
+	}
+
+	@Test
+	public void valuesAreEvictedByWeight() {
+		LruEntityCache<String> cache = new LruEntityCache<String>(5, 60000) {
+
+			@Override
+			protected long weigh(String value) {
+				return value.length();
+			}
+		};
+		cache.put("a", NUMBERS, "12");
+		cache.put("b", NUMBERS, "34");
+		cache.put("c", NUMBERS, "567");
+
+		assertNull(cache.get("a"));
+		assertEquals("34", cache.get("b"));
+		assertEquals("567", cache.get("c"));
+
+		cache.put("d", NUMBERS, "123456");
+		assertNull(cache.get("d"));
+		assertEquals("34", cache.get("b"));
+	}
+
+	@Test
+	public void replacedValueIsWeighedOnce() {
+		LruEntityCache<String> cache = new LruEntityCache<String>(2, 60000);
+		cache.put("a", NUMBERS, "1");
+		cache.put("a", NUMBERS, "2");
+		cache.put("b", NUMBERS, "3");
+
+		assertEquals("2", cache.get("a"));
+		assertEquals("3", cache.get("b"));
+	}
+
+	@Test
+	public void expiredValueIsNotReturned() {
+		LruEntityCache<String> cache = new LruEntityCache<String>(10, -1);
+		cache.put("a", NUMBERS, "1");
+
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void invalidationRemovesValuesReadingRelatedClasses() {
+		LruEntityCache<String> cache = new LruEntityCache<String>(10, 60000);
+		cache.put("a", NUMBERS, "1");
+		cache.put("b", STRINGS, "2");
+		cache.invalidate(Long.class);
+
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+	}
+
+	@Test
+	public void clearRemovesEveryValue() {
+		LruEntityCache<String> cache = new LruEntityCache<String>(1, 60000);
+		cache.put("a", NUMBERS, "1");
+		cache.clear();
+		cache.put("b", STRINGS, "2");
+
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void weightMustBePositive() {
+		new LruEntityCache<String>(0, 60000);
+	}
+}
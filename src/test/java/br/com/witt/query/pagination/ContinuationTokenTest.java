@@ -0,0 +1,112 @@
+package br.com.witt.query.pagination;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the encoding of keys into {@link ContinuationToken continuation tokens}
+ * and the rejection of invalid tokens.
+ *
+ * @author Luciano Witt
+ *
+ */
+public class ContinuationTokenTest {
+
+	private static final long SHAPE = 0x1234567890abcdefL;
+
+	@Test
+	public void keyIsDecodedAsEncoded() {
+		Timestamp timestamp = new Timestamp(1500000000000L);
+		timestamp.setNanos(123456789);
+		Object[] key = new Object[] { null, "text", 1, 2L, (short) 3, (byte) 4, 5.5d, 6.5f, true, 'c',
+				new BigDecimal("7.50"), new BigInteger("12345678901234567890"), UUID.randomUUID(), timestamp,
+				new java.sql.Date(1500000000000L), new Date(1500000000000L), LocalDate.of(2020, 2, 29),
+				Instant.ofEpochSecond(1500000000L, 987654321), TimeUnit.SECONDS };
+
+		Object[] decoded = ContinuationToken.decode(SHAPE, ContinuationToken.encode(SHAPE, key));
+
+		assertArrayEquals(key, decoded);
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != null) {
+				assertEquals(key[i].getClass(), decoded[i].getClass());
+			}
+		}
+	}
+
+	@Test
+	public void emptyKeyIsDecoded() {
+		assertEquals(0, ContinuationToken.decode(SHAPE, ContinuationToken.encode(SHAPE, new Object[0])).length);
+	}
+
+	@Test
+	public void tokenOfAnotherShapeIsRejected() {
+		assertRejected(SHAPE + 1, ContinuationToken.encode(SHAPE, new Object[] { 1L }));
+	}
+
+	@Test
+	public void tamperedTokensAreRejected() {
+		byte[] bytes = Base64.getUrlDecoder().decode(ContinuationToken.encode(SHAPE, new Object[] { 1L }));
+
+		byte[] version = bytes.clone();
+		version[0]++;
+		assertRejected(SHAPE, encode(version));
+
+		byte[] type = bytes.clone();
+		type[11] = 'X';
+		assertRejected(SHAPE, encode(type));
+
+		byte[] truncated = new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		assertRejected(SHAPE, encode(truncated));
+
+		byte[] trailing = new byte[bytes.length + 1];
+		System.arraycopy(bytes, 0, trailing, 0, bytes.length);
+		assertRejected(SHAPE, encode(trailing));
+
+		assertRejected(SHAPE, "not a token!");
+	}
+
+	@Test
+	public void enumOfNonEnumClassIsRejected() {
+		String token = ContinuationToken.encode(SHAPE, new Object[] { TimeUnit.SECONDS });
+		String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.ISO_8859_1);
+		String tampered = decoded.replace(TimeUnit.class.getName(), Executor.class.getName());
+
+		assertRejected(SHAPE, encode(tampered.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void unsupportedValueIsRejected() {
+		ContinuationToken.encode(SHAPE, new Object[] { new Object() });
+	}
+
+	private static String encode(byte[] bytes) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	private static void assertRejected(long shapeHash, String token) {
+		try {
+			ContinuationToken.decode(shapeHash, token);
+			fail("Token was accepted");
+		} catch (RuntimeException e) {
+			if (e.getMessage() == null || !e.getMessage().contains("token")) {
+				throw e;
+			}
+		}
+	}
+}